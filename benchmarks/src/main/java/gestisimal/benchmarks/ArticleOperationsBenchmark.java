@@ -0,0 +1,60 @@
+package gestisimal.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import gestisimal.classes.Article;
+import gestisimal.exceptions.ArticleStockException;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+
+/**
+ * Operaciones sobre artículos que ya existen: consulta, entrada y salida de mercancía y
+ * modificación. Cada operación elige un artículo al azar del catálogo, así que varios hilos
+ * compiten de forma realista por los mismos artículos.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArticleOperationsBenchmark {
+
+  @Benchmark
+  public Article returnArticle(CatalogState state) throws WarehouseArticleNotExistsException {
+    return state.warehouse.returnArticle(randomCode(state));
+  }
+
+  @Benchmark
+  public void incrementUnitsOfArticle(CatalogState state) throws WarehouseArticleNotExistsException {
+    state.warehouse.incrementUnitsOfArticle(randomCode(state), 1);
+  }
+
+  @Benchmark
+  public void decreaseUnitsOfArticle(CatalogState state) throws WarehouseArticleNotExistsException, ArticleStockException {
+    state.warehouse.decreaseUnitsOfArticle(randomCode(state), 1);
+  }
+
+  @Benchmark
+  public void modifyArticle(CatalogState state) throws WarehouseArticleNotExistsException, WarehouseArticleRepeatedException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int code = random.nextInt(state.catalogSize);
+    // Se mantienen nombre, marca y unidades para no chocar con otros artículos ni agotar el stock
+    state.warehouse.modifyArticle(code, CatalogState.name(code), CatalogState.brand(code), 1.0 + random.nextInt(50),
+        2.0 + random.nextInt(80), CatalogState.INITIAL_UNITS, 10, CatalogState.INITIAL_UNITS);
+  }
+
+  private static int randomCode(CatalogState state) {
+    return ThreadLocalRandom.current().nextInt(state.catalogSize);
+  }
+}
@@ -0,0 +1,42 @@
+package gestisimal.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ejecuta los benchmarks una vez por cada número de hilos y deja los resultados en ficheros JSON,
+ * uno por número de hilos, para compararlos entre versiones.
+ *
+ * <p>Uso: {@code java -jar target/benchmarks.jar [hilos] [expresión]}, donde {@code hilos} es una
+ * lista separada por comas (por defecto {@code 1,2,4,8}) y {@code expresión} filtra los benchmarks
+ * por nombre (por defecto todos). Para pasar otras opciones a JMH se puede usar directamente
+ * {@code java -cp target/benchmarks.jar org.openjdk.jmh.Main}.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class BenchmarkRunner {
+  private static final String DEFAULT_THREADS = "1,2,4,8";
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    String threads = args.length > 0 ? args[0] : DEFAULT_THREADS;
+    String include = args.length > 1 ? args[1] : "gestisimal\\.benchmarks\\..*";
+    for (String count : threads.split(",")) {
+      int n = Integer.parseInt(count.trim());
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(n)
+          .resultFormat(ResultFormatType.JSON)
+          .result("jmh-result-" + n + "-threads.json")
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
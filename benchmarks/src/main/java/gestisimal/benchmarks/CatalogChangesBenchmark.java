@@ -0,0 +1,63 @@
+package gestisimal.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import gestisimal.classes.Warehouse;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+
+/**
+ * Altas y bajas de artículos. Como cambian el tamaño del catálogo, cada iteración parte de un
+ * almacén nuevo y mide un lote de {@link #BATCH} operaciones en cada hilo. El catálogo tiene al
+ * menos un artículo por cada baja de la iteración, así que nunca se da de baja un código dos veces.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = CatalogChangesBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = CatalogChangesBenchmark.BATCH)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogChangesBenchmark {
+  static final int BATCH = 1000;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  private Warehouse warehouse;
+  private final AtomicInteger next = new AtomicInteger();
+
+  @Setup(Level.Iteration)
+  public void setUp(BenchmarkParams params) throws WarehouseArticleRepeatedException, WarehouseArticleNotExistsException {
+    warehouse = CatalogState.fill(new Warehouse(true), Math.max(catalogSize, BATCH * params.getThreads()));
+    next.set(0);
+  }
+
+  @Benchmark
+  public void addArticle() throws WarehouseArticleRepeatedException {
+    int i = next.getAndIncrement();
+    warehouse.addArticle("new-article-" + i, CatalogState.brand(i), 1.0, 2.0, 100, 10, 1000);
+  }
+
+  @Benchmark
+  public void deleteArticle() throws WarehouseArticleNotExistsException {
+    // Los hilos comparten el contador: cada baja es de un código distinto que existe
+    warehouse.deleteArticle(next.getAndIncrement());
+  }
+}
@@ -0,0 +1,66 @@
+package gestisimal.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import gestisimal.classes.Warehouse;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+
+/**
+ * Almacén compartido por los hilos de un benchmark, con un catálogo del tamaño indicado por el
+ * parámetro {@code catalogSize}. El artículo {@code i} se llama {@code article-i}, es de la marca
+ * {@code brand-(i % 100)} y tiene el código {@code i}.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@State(Scope.Benchmark)
+public class CatalogState {
+  /**
+   * Unidades iniciales de cada artículo, suficientes para que las salidas no se queden sin stock.
+   */
+  static final int INITIAL_UNITS = 1_000_000_000;
+  static final int BRANDS = 100;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  public Warehouse warehouse;
+
+  @Setup(Level.Trial)
+  public void setUp() throws WarehouseArticleRepeatedException, WarehouseArticleNotExistsException {
+    warehouse = fill(new Warehouse(true), catalogSize);
+  }
+
+  /**
+   * Llena el almacén con el catálogo de prueba.
+   *
+   * @param warehouse   Almacén vacío.
+   * @param size        Número de artículos.
+   * @return            El mismo almacén.
+   * @throws WarehouseArticleRepeatedException      Si el almacén no estaba vacío.
+   * @throws WarehouseArticleNotExistsException     Si los códigos no van de 0 a size - 1.
+   */
+
+  static Warehouse fill(Warehouse warehouse, int size)
+      throws WarehouseArticleRepeatedException, WarehouseArticleNotExistsException {
+    for (int i = 0; i < size; i++) {
+      warehouse.addArticle(name(i), brand(i), 1.0 + i % 50, 2.0 + i % 80, INITIAL_UNITS, 10, INITIAL_UNITS);
+    }
+    // Los benchmarks eligen artículos por código: se comprueba que son los esperados
+    warehouse.returnArticle(size - 1);
+    return warehouse;
+  }
+
+  static String name(int code) {
+    return "article-" + code;
+  }
+
+  static String brand(int code) {
+    return "brand-" + code % BRANDS;
+  }
+}
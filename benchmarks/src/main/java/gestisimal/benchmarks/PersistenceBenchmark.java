@@ -0,0 +1,92 @@
+package gestisimal.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import gestisimal.classes.Warehouse;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Guardado y carga del almacén en XML. Cada hilo guarda en su propio fichero para que los
+ * guardados concurrentes no se pisen; la carga lee un fichero guardado al preparar el benchmark.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int catalogSize;
+
+  private Warehouse warehouse;
+  private Path directory;
+  private String savedFile;
+  private final AtomicInteger files = new AtomicInteger();
+
+  /**
+   * Fichero de guardado de cada hilo.
+   */
+
+  @State(Scope.Thread)
+  public static class Target {
+    String fileName;
+
+    @Setup(Level.Trial)
+    public void setUp(PersistenceBenchmark benchmark) {
+      fileName = benchmark.directory.resolve("save-" + benchmark.files.getAndIncrement() + ".xml").toString();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, WarehouseArticleRepeatedException, WarehouseArticleNotExistsException,
+      WarehousePersistenceException {
+    directory = Files.createTempDirectory("gestisimal-bench");
+    warehouse = CatalogState.fill(new Warehouse(true), catalogSize);
+    savedFile = directory.resolve("warehouse.xml").toString();
+    warehouse.save(savedFile);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (var files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public void save(Target target) throws WarehousePersistenceException {
+    warehouse.save(target.fileName);
+  }
+
+  @Benchmark
+  public Warehouse loadXml() throws WarehousePersistenceException {
+    return new Warehouse(savedFile);
+  }
+}
@@ -0,0 +1,40 @@
+package gestisimal.classes;
+
+/**
+ * Reparte los códigos de los artículos de un almacén.
+ * Un mismo repartidor puede compartirse entre varios almacenes para que sus códigos no coincidan.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public interface ArticleCodeAllocator {
+  
+  /**
+   * Devuelve un código que no se ha repartido nunca.
+   * 
+   * @return    Código nuevo.
+   * @throws IllegalStateException  Si ya no quedan códigos por repartir.
+   */
+  
+  int nextCode();
+  
+  /**
+   * Garantiza que a partir de ahora no se repartirá ningún código menor que el indicado.
+   * Se usa al cargar un almacén para respetar los códigos guardados.
+   * 
+   * @param code    Primer código que se puede repartir. {@code Integer.MAX_VALUE} indica que ya
+   *                no se puede repartir ninguno.
+   */
+  
+  void advanceTo(int code);
+  
+  /**
+   * Devuelve el primer código a partir del cual no se ha repartido ninguno.
+   * Es el valor que se guarda junto al almacén para no repetir códigos al cargarlo.
+   * 
+   * @return    Marca de agua del repartidor.
+   */
+  
+  int getHighWaterMark();
+}
@@ -0,0 +1,175 @@
+package gestisimal.classes;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Base de los índices secundarios que se enganchan a un almacén como observadores. Guarda con qué
+ * clave está indexado cada artículo y, con cada alta, baja o cambio, quita la clave anterior y
+ * pone la nueva si ha cambiado. Cada índice decide qué clave saca del artículo y en qué
+ * estructuras la guarda.
+ *
+ * <p>Los cambios del índice se hacen con el cerrojo de escritura; las consultas de las subclases
+ * toman el de lectura.</p>
+ *
+ * @param <K>   Datos del artículo con los que se indexa.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+abstract class ArticleIndex<K extends ArticleIndex.Key> {
+  final Warehouse warehouse;
+  final ReadWriteLock lock = new ReentrantReadWriteLock();
+  /**
+   * Clave con la que está indexado cada artículo, para quitarla al cambiar.
+   */
+  final Map<Integer, K> indexed = new ConcurrentHashMap<Integer, K>();
+  private final Listener listener = new Listener();
+
+  ArticleIndex(Warehouse warehouse) {
+    this.warehouse = warehouse;
+  }
+
+  /**
+   * Datos de un artículo tal como están en el índice.
+   */
+
+  interface Key {
+
+    /**
+     * Comprueba si el artículo sigue teniendo estos datos, para no tocar el índice cuando cambia
+     * otra cosa.
+     *
+     * @param article   Artículo indexado.
+     * @return          Si no hace falta volver a indexarlo.
+     */
+
+    boolean matches(Article article);
+  }
+
+  /**
+   * Engancha el índice a su almacén e indexa los artículos que ya tiene.
+   *
+   * @param index   Índice recién creado.
+   * @return        El mismo índice.
+   */
+
+  static <I extends ArticleIndex<?>> I track(I index) {
+    ArticleIndex<?> base = index;
+    base.warehouse.addListener(base.listener);
+    for (Article article : base.warehouse.articles()) {
+      base.update(article);
+    }
+    return index;
+  }
+
+  /**
+   * Desengancha el índice del almacén. Los cambios posteriores ya no se reflejan en las consultas.
+   */
+
+  public void detach() {
+    warehouse.removeListener(listener);
+  }
+
+  /**
+   * Saca la clave actual del artículo.
+   *
+   * @param article   Artículo a indexar.
+   * @return          Clave del artículo.
+   */
+
+  abstract K keyOf(Article article);
+
+  /**
+   * Guarda la clave en las estructuras del índice. Se llama con el cerrojo de escritura tomado.
+   *
+   * @param key     Clave del artículo.
+   * @param code    Código del artículo.
+   */
+
+  abstract void addKey(K key, int code);
+
+  /**
+   * Quita la clave de las estructuras del índice. Se llama con el cerrojo de escritura tomado.
+   *
+   * @param key     Clave con la que estaba indexado.
+   * @param code    Código del artículo.
+   */
+
+  abstract void removeKey(K key, int code);
+
+  /**
+   * Añade a la lista el artículo del almacén con ese código si todavía existe.
+   *
+   * @param found   Artículos encontrados.
+   * @param code    Código del artículo.
+   */
+
+  final void addArticle(List<Article> found, int code) {
+    Article article = warehouse.findArticle(code);
+    if (article != null) {
+      found.add(article);
+    }
+  }
+
+  private void update(Article article) {
+    K previous = indexed.get(article.getCode());
+    if (previous != null && previous.matches(article)) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      K current = keyOf(article);
+      previous = indexed.put(article.getCode(), current);
+      if (previous != null) {
+        removeKey(previous, article.getCode());
+      }
+      addKey(current, article.getCode());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void remove(Article article) {
+    lock.writeLock().lock();
+    try {
+      K previous = indexed.remove(article.getCode());
+      if (previous != null) {
+        removeKey(previous, article.getCode());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Lleva al índice las altas, bajas y cambios de los artículos.
+   */
+
+  private class Listener implements WarehouseListener {
+
+    @Override
+    public void articleAdded(Article article) {
+      update(article);
+    }
+
+    @Override
+    public void articleModified(Article article) {
+      update(article);
+    }
+
+    @Override
+    public void articleChanged(Article article) {
+      update(article);
+    }
+
+    @Override
+    public void articleDeleted(Article article) {
+      remove(article);
+    }
+  }
+}
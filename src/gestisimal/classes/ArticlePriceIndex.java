@@ -0,0 +1,197 @@
+package gestisimal.classes;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Índices ordenados por precio de compra y por precio de venta de los artículos de un almacén.
+ * Las consultas por rango de precio y las de los N más baratos o más caros cuestan un tiempo
+ * logarítmico más el tamaño del resultado, en lugar de recorrer y ordenar todo el catálogo.
+ *
+ * <p>Cada artículo ocupa una entrada en cada uno de los dos índices. Al cambiar un precio solo
+ * se mueve su entrada; los cambios de unidades, nombre o marca no tocan los índices. Se puede usar
+ * desde varios hilos.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ArticlePriceIndex extends ArticleIndex<ArticlePriceIndex.Prices> {
+  private final NavigableSet<Entry> buyingPrices = new TreeSet<Entry>();
+  private final NavigableSet<Entry> sellingPrices = new TreeSet<Entry>();
+
+  private ArticlePriceIndex(Warehouse warehouse) {
+    super(warehouse);
+  }
+
+  /**
+   * Ordena por precio los artículos del almacén y, desde ese momento, recoloca cada artículo al
+   * cambiar sus precios, lo añade en su alta y lo quita en su baja.
+   *
+   * @param warehouse   Almacén cuyos precios se indexan.
+   * @return            Índice de precios del almacén.
+   */
+
+  public static ArticlePriceIndex attach(Warehouse warehouse) {
+    return track(new ArticlePriceIndex(warehouse));
+  }
+
+  /**
+   * Busca los artículos con el precio de compra entre dos valores, ambos incluidos.
+   *
+   * @param min   Precio mínimo.
+   * @param max   Precio máximo.
+   * @return      Artículos encontrados de menor a mayor precio.
+   */
+
+  public List<Article> findByBuyingPriceBetween(double min, double max) {
+    return between(buyingPrices, min, max);
+  }
+
+  /**
+   * Busca los artículos con el precio de venta entre dos valores, ambos incluidos.
+   *
+   * @param min   Precio mínimo.
+   * @param max   Precio máximo.
+   * @return      Artículos encontrados de menor a mayor precio.
+   */
+
+  public List<Article> findBySellingPriceBetween(double min, double max) {
+    return between(sellingPrices, min, max);
+  }
+
+  /**
+   * Devuelve los artículos con menor precio de compra.
+   *
+   * @param count   Número máximo de artículos.
+   * @return        Artículos de menor a mayor precio.
+   */
+
+  public List<Article> lowestBuyingPrices(int count) {
+    return first(buyingPrices, count);
+  }
+
+  /**
+   * Devuelve los artículos con mayor precio de compra.
+   *
+   * @param count   Número máximo de artículos.
+   * @return        Artículos de mayor a menor precio.
+   */
+
+  public List<Article> highestBuyingPrices(int count) {
+    return first(buyingPrices.descendingSet(), count);
+  }
+
+  /**
+   * Devuelve los artículos con menor precio de venta.
+   *
+   * @param count   Número máximo de artículos.
+   * @return        Artículos de menor a mayor precio.
+   */
+
+  public List<Article> lowestSellingPrices(int count) {
+    return first(sellingPrices, count);
+  }
+
+  /**
+   * Devuelve los artículos con mayor precio de venta.
+   *
+   * @param count   Número máximo de artículos.
+   * @return        Artículos de mayor a menor precio.
+   */
+
+  public List<Article> highestSellingPrices(int count) {
+    return first(sellingPrices.descendingSet(), count);
+  }
+
+  private List<Article> between(NavigableSet<Entry> prices, double min, double max) {
+    List<Article> found = new ArrayList<Article>();
+    if (min > max) {
+      return found;
+    }
+    lock.readLock().lock();
+    try {
+      for (Entry entry : prices.subSet(new Entry(min, Integer.MIN_VALUE), true, new Entry(max, Integer.MAX_VALUE), true)) {
+        addArticle(found, entry.code);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  private List<Article> first(NavigableSet<Entry> prices, int count) {
+    List<Article> found = new ArrayList<Article>(Math.max(0, Math.min(count, indexed.size())));
+    lock.readLock().lock();
+    try {
+      for (Iterator<Entry> it = prices.iterator(); found.size() < count && it.hasNext();) {
+        addArticle(found, it.next().code);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  @Override
+  Prices keyOf(Article article) {
+    return new Prices(article.getBuyingPrice(), article.getSellingPrice());
+  }
+
+  @Override
+  void addKey(Prices prices, int code) {
+    buyingPrices.add(new Entry(prices.buyingPrice, code));
+    sellingPrices.add(new Entry(prices.sellingPrice, code));
+  }
+
+  @Override
+  void removeKey(Prices prices, int code) {
+    buyingPrices.remove(new Entry(prices.buyingPrice, code));
+    sellingPrices.remove(new Entry(prices.sellingPrice, code));
+  }
+
+  /**
+   * Precio de un artículo en uno de los índices. Se ordena por precio y, a igual precio, por código.
+   * El precio -0.0 se guarda como 0.0, porque {@link Double#compare} los distingue y un artículo
+   * con precio -0.0 quedaría fuera de las búsquedas que empiezan en 0.
+   */
+
+  private static final class Entry implements Comparable<Entry> {
+    private final double price;
+    private final int code;
+
+    Entry(double price, int code) {
+      this.price = price == 0 ? 0.0 : price;
+      this.code = code;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int result = Double.compare(price, other.price);
+      return result != 0 ? result : Integer.compare(code, other.code);
+    }
+  }
+
+  /**
+   * Precios de compra y venta con los que está colocado un artículo en los índices.
+   */
+
+  static final class Prices implements ArticleIndex.Key {
+    private final double buyingPrice;
+    private final double sellingPrice;
+
+    Prices(double buyingPrice, double sellingPrice) {
+      this.buyingPrice = buyingPrice;
+      this.sellingPrice = sellingPrice;
+    }
+
+    @Override
+    public boolean matches(Article article) {
+      return Double.compare(buyingPrice, article.getBuyingPrice()) == 0
+          && Double.compare(sellingPrice, article.getSellingPrice()) == 0;
+    }
+  }
+}
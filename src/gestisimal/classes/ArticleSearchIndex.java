@@ -0,0 +1,284 @@
+package gestisimal.classes;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Índice de búsqueda por texto sobre el nombre y la marca de los artículos de un almacén. Permite
+ * buscar por el principio del texto (prefijo) o por cualquier parte (subcadena) sin recorrer todo
+ * el catálogo.
+ *
+ * <p>Para los prefijos se guardan los textos ordenados; para las subcadenas, los trozos de uno a
+ * tres caracteres (n-gramas) de cada texto con los códigos de los artículos que los contienen. Una
+ * búsqueda de más de tres caracteres cruza los trigramas de la consulta y comprueba solo los
+ * artículos que los tienen todos.</p>
+ *
+ * <p>Las búsquedas no distinguen mayúsculas ni tildes. El índice se mantiene al día con las
+ * altas, bajas y modificaciones del almacén mientras está enganchado a él. Se puede usar desde
+ * varios hilos.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ArticleSearchIndex extends ArticleIndex<ArticleSearchIndex.Terms> {
+  private static final int GRAM = 3;
+
+  private final Field names = new Field();
+  private final Field brands = new Field();
+
+  private ArticleSearchIndex(Warehouse warehouse) {
+    super(warehouse);
+  }
+
+  /**
+   * Crea el índice con los artículos del almacén y lo engancha para que siga sus cambios.
+   *
+   * @param warehouse   Almacén a indexar.
+   * @return            Índice del almacén.
+   */
+
+  public static ArticleSearchIndex attach(Warehouse warehouse) {
+    return track(new ArticleSearchIndex(warehouse));
+  }
+
+  /**
+   * Busca los artículos cuyo nombre empieza por el texto.
+   *
+   * @param prefix    Principio del nombre.
+   * @return          Artículos encontrados en orden de código.
+   */
+
+  public List<Article> findByNamePrefix(String prefix) {
+    return byPrefix(names, prefix);
+  }
+
+  /**
+   * Busca los artículos cuya marca empieza por el texto.
+   *
+   * @param prefix    Principio de la marca.
+   * @return          Artículos encontrados en orden de código.
+   */
+
+  public List<Article> findByBrandPrefix(String prefix) {
+    return byPrefix(brands, prefix);
+  }
+
+  /**
+   * Busca los artículos cuyo nombre contiene el texto.
+   *
+   * @param text    Parte del nombre.
+   * @return        Artículos encontrados en orden de código.
+   */
+
+  public List<Article> findByNameContaining(String text) {
+    return containing(text, true, false);
+  }
+
+  /**
+   * Busca los artículos cuya marca contiene el texto.
+   *
+   * @param text    Parte de la marca.
+   * @return        Artículos encontrados en orden de código.
+   */
+
+  public List<Article> findByBrandContaining(String text) {
+    return containing(text, false, true);
+  }
+
+  /**
+   * Busca los artículos cuyo nombre o marca contiene el texto.
+   *
+   * @param text    Parte del nombre o de la marca.
+   * @return        Artículos encontrados en orden de código.
+   */
+
+  public List<Article> find(String text) {
+    return containing(text, true, true);
+  }
+
+  private List<Article> byPrefix(Field field, String prefix) {
+    String key = normalize(prefix);
+    Set<Integer> codes = new TreeSet<Integer>();
+    lock.readLock().lock();
+    try {
+      for (Set<Integer> posting : field.prefixes.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+        codes.addAll(posting);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return resolve(codes);
+  }
+
+  private List<Article> containing(String text, boolean byName, boolean byBrand) {
+    String key = normalize(text);
+    Set<Integer> codes = new TreeSet<Integer>();
+    lock.readLock().lock();
+    try {
+      if (byName) {
+        names.containing(key, codes, true);
+      }
+      if (byBrand) {
+        brands.containing(key, codes, false);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return resolve(codes);
+  }
+
+  private List<Article> resolve(Set<Integer> codes) {
+    List<Article> found = new ArrayList<Article>(codes.size());
+    for (Integer code : codes) {
+      addArticle(found, code);
+    }
+    return found;
+  }
+
+  @Override
+  Terms keyOf(Article article) {
+    return new Terms(article.getName(), article.getBrand());
+  }
+
+  @Override
+  void addKey(Terms terms, int code) {
+    names.add(terms.nameKey, code);
+    brands.add(terms.brandKey, code);
+  }
+
+  @Override
+  void removeKey(Terms terms, int code) {
+    names.remove(terms.nameKey, code);
+    brands.remove(terms.brandKey, code);
+  }
+
+  /**
+   * Pasa el texto a minúsculas y le quita las tildes.
+   *
+   * @param text    Texto a normalizar.
+   * @return        Texto normalizado.
+   */
+
+  static String normalize(String text) {
+    String lower = text.toLowerCase(Locale.ROOT);
+    for (int i = 0; i < lower.length(); i++) {
+      if (lower.charAt(i) > 0x7f) {
+        return Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+      }
+    }
+    return lower;
+  }
+
+  /**
+   * Índices de prefijos y n-gramas de un dato de los artículos.
+   */
+
+  private final class Field {
+    private final NavigableMap<String, Set<Integer>> prefixes = new TreeMap<String, Set<Integer>>();
+    private final Map<String, Set<Integer>> grams = new HashMap<String, Set<Integer>>();
+
+    void add(String term, int code) {
+      prefixes.computeIfAbsent(term, t -> new HashSet<Integer>()).add(code);
+      for (String gram : grams(term)) {
+        grams.computeIfAbsent(gram, g -> new HashSet<Integer>()).add(code);
+      }
+    }
+
+    void remove(String term, int code) {
+      removeFrom(prefixes, term, code);
+      for (String gram : grams(term)) {
+        removeFrom(grams, gram, code);
+      }
+    }
+
+    /**
+     * Añade los códigos de los artículos cuyo dato contiene el texto.
+     *
+     * @param key       Texto normalizado.
+     * @param codes     Códigos encontrados.
+     * @param byName    Si el dato es el nombre; si no, la marca.
+     */
+
+    void containing(String key, Set<Integer> codes, boolean byName) {
+      if (key.isEmpty()) {
+        for (Set<Integer> posting : prefixes.values()) {
+          codes.addAll(posting);
+        }
+        return;
+      }
+      if (key.length() <= GRAM) {
+        codes.addAll(grams.getOrDefault(key, Collections.emptySet()));
+        return;
+      }
+      // Se parte de la lista de trigramas más corta y se comprueba cada candidato
+      Set<Integer> shortest = null;
+      for (int i = 0; i + GRAM <= key.length(); i++) {
+        Set<Integer> posting = grams.get(key.substring(i, i + GRAM));
+        if (posting == null) {
+          return;
+        }
+        if (shortest == null || posting.size() < shortest.size()) {
+          shortest = posting;
+        }
+      }
+      for (Integer code : shortest) {
+        Terms terms = indexed.get(code);
+        if (terms != null && (byName ? terms.nameKey : terms.brandKey).contains(key)) {
+          codes.add(code);
+        }
+      }
+    }
+
+    private Set<String> grams(String term) {
+      Set<String> result = new HashSet<String>();
+      for (int length = 1; length <= GRAM; length++) {
+        for (int i = 0; i + length <= term.length(); i++) {
+          result.add(term.substring(i, i + length));
+        }
+      }
+      return result;
+    }
+
+    private void removeFrom(Map<String, Set<Integer>> index, String key, int code) {
+      Set<Integer> posting = index.get(key);
+      if (posting != null && posting.remove(code) && posting.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Nombre y marca con los que está indexado un artículo, tal cual y normalizados. Los cambios de
+   * unidades o precios no los alteran, así que no tocan el índice.
+   */
+
+  static final class Terms implements ArticleIndex.Key {
+    private final String name;
+    private final String brand;
+    private final String nameKey;
+    private final String brandKey;
+
+    Terms(String name, String brand) {
+      this.name = name;
+      this.brand = brand;
+      this.nameKey = normalize(name);
+      this.brandKey = normalize(brand);
+    }
+
+    @Override
+    public boolean matches(Article article) {
+      return name.equals(article.getName()) && brand.equals(article.getBrand());
+    }
+  }
+}
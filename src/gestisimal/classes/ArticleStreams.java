@@ -0,0 +1,36 @@
+package gestisimal.classes;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Recorridos en paralelo de artículos para los cálculos sobre el almacén.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+final class ArticleStreams {
+  /**
+   * Por debajo de este número de artículos no compensa repartir el trabajo entre hilos.
+   */
+  static final int PARALLEL_THRESHOLD = 10_000;
+  
+  private ArticleStreams() {
+  }
+  
+  /**
+   * Recorre los artículos, en paralelo si hay suficientes. Se copian antes a un array porque se
+   * divide en partes iguales sin coste, mientras que los índices del almacén no.
+   * 
+   * @param articles    Artículos a recorrer, normalmente una vista de un índice del almacén.
+   * @return            Flujo de artículos.
+   */
+  
+  static Stream<Article> of(Collection<Article> articles) {
+    Article[] copy = articles.toArray(new Article[0]);
+    Stream<Article> stream = Arrays.stream(copy);
+    return copy.length < PARALLEL_THRESHOLD ? stream : stream.parallel();
+  }
+}
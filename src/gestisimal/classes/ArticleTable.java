@@ -0,0 +1,389 @@
+package gestisimal.classes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import gestisimal.exceptions.ArticleIllegalArgumentException;
+import gestisimal.exceptions.ArticleStockException;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+
+/**
+ * Copia por columnas de los artículos de un almacén, para análisis y recorridos masivos. Cada dato
+ * de los artículos se guarda en su propio array de primitivos indexado por posición
+ * ({@code int[]} para unidades y stocks, {@code double[]} para precios), en lugar de un objeto
+ * {@link Article} por artículo. Los recorridos por stock o precio leen memoria contigua y cada
+ * artículo ocupa mucho menos.
+ *
+ * <p>No sustituye al almacén: solo admite altas, bajas y entradas y salidas de mercancía, no
+ * modificaciones ni cambios de precio, y no avisa a nadie de los cambios. Se crea con
+ * {@link #of(Warehouse)} y se vuelve a un almacén con {@link #toWarehouse()}. Igual que en el
+ * almacén, no puede haber dos artículos con el mismo código ni con el mismo nombre y marca.</p>
+ *
+ * <p>Los objetos {@link Article} solo se crean cuando se piden con {@link #returnArticle(int)}, y
+ * son copias: cambiarlos no cambia la tabla. Las marcas se guardan una sola vez aunque las
+ * compartan muchos artículos. Las posiciones libres por bajas se reutilizan en las altas.</p>
+ *
+ * <p>La tabla no está sincronizada: debe usarla un solo hilo o sincronizarse desde fuera.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ArticleTable {
+  private static final int EMPTY = -1;
+
+  private int[] codes;
+  private String[] names;
+  private String[] brands;
+  private double[] buyingPrices;
+  private double[] sellingPrices;
+  private int[] units;
+  private int[] securityStocks;
+  private int[] maxStocks;
+
+  /**
+   * Índice de código a posición.
+   */
+  private final IntIntMap slots;
+  /**
+   * Marcas ya guardadas, para compartir la misma cadena.
+   */
+  private final Map<String, String> brandPool = new HashMap<String, String>();
+  /**
+   * Nombres y marcas de los artículos, que no se pueden repetir.
+   */
+  private final Set<String> nameAndBrands = new HashSet<String>();
+  /**
+   * Pila de posiciones libres por bajas.
+   */
+  private int[] freeSlots = new int[16];
+  private int freeCount;
+  /**
+   * Primera posición que no se ha usado nunca.
+   */
+  private int top;
+
+  /**
+   * Crea una tabla vacía.
+   */
+  public ArticleTable() {
+    this(1024);
+  }
+
+  /**
+   * Crea una tabla vacía con sitio para los artículos indicados sin crecer.
+   *
+   * @param capacity    Número de artículos previsto.
+   */
+  public ArticleTable(int capacity) {
+    capacity = Math.max(capacity, 16);
+    codes = new int[capacity];
+    names = new String[capacity];
+    brands = new String[capacity];
+    buyingPrices = new double[capacity];
+    sellingPrices = new double[capacity];
+    units = new int[capacity];
+    securityStocks = new int[capacity];
+    maxStocks = new int[capacity];
+    slots = new IntIntMap(capacity);
+  }
+
+  /**
+   * Crea una tabla con una copia de los artículos del almacén.
+   *
+   * @param warehouse   Almacén a copiar.
+   * @return            Tabla con los artículos del almacén.
+   */
+
+  public static ArticleTable of(Warehouse warehouse) {
+    ArticleTable table = new ArticleTable(warehouse.articles().size());
+    for (Article art : warehouse.articles()) {
+      synchronized (art) {
+        table.add(art.getCode(), art.getName(), art.getBrand(), art.getBuyingPrice(), art.getSellingPrice(),
+            art.getUnits(), art.getSecurityStock(), art.getMaxStock());
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Crea un almacén con los artículos de la tabla.
+   *
+   * @return    Almacén nuevo con una copia de los artículos.
+   */
+
+  public Warehouse toWarehouse() {
+    Warehouse warehouse = new Warehouse();
+    for (int slot = 0; slot < top; slot++) {
+      if (codes[slot] != EMPTY) {
+        if (!warehouse.restoreArticle(codes[slot], names[slot], brands[slot], buyingPrices[slot], sellingPrices[slot],
+            units[slot], securityStocks[slot], maxStocks[slot])) {
+          throw new IllegalStateException("Artículo repetido en la tabla (código " + codes[slot] + ")");
+        }
+      }
+    }
+    return warehouse;
+  }
+
+  /**
+   * Añade un artículo a la tabla.
+   *
+   * @param code            Código del artículo.
+   * @param name            Nombre.
+   * @param brand           Marca.
+   * @param buyingPrice     Precio de compra.
+   * @param sellingPrice    Precio de venta.
+   * @param units           Unidades.
+   * @param securityStock   Stock de seguridad.
+   * @param maxStock        Stock máximo.
+   * @return                Posición que ocupa el artículo.
+   * @throws ArticleIllegalArgumentException    Si algún dato no es válido o ya hay un artículo con
+   *                                            el mismo código o el mismo nombre y marca.
+   */
+
+  public int add(int code, String name, String brand, double buyingPrice, double sellingPrice,
+      int units, int securityStock, int maxStock) {
+    if (code < 0) {
+      throw new ArticleIllegalArgumentException("El código no puede ser negativo");
+    }
+    if (name == null || name.isEmpty() || brand == null || brand.isEmpty()) {
+      throw new ArticleIllegalArgumentException("La cadena no puede ser null o estar vacia.");
+    }
+    if (buyingPrice < 0 || sellingPrice < 0) {
+      throw new ArticleIllegalArgumentException("El precio no puede ser negativo");
+    }
+    if (units < 0) {
+      throw new ArticleIllegalArgumentException("Las unidades a modificar no pueden ser negativa");
+    }
+    if (slots.get(code, EMPTY) != EMPTY) {
+      throw new ArticleIllegalArgumentException("Ya hay un artículo con el código " + code);
+    }
+    if (!nameAndBrands.add(Warehouse.nameAndBrandKey(name, brand))) {
+      throw new ArticleIllegalArgumentException("Ya hay un artículo " + name + " de la marca " + brand);
+    }
+    int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot();
+    codes[slot] = code;
+    names[slot] = name;
+    brands[slot] = brandPool.computeIfAbsent(brand, b -> b);
+    buyingPrices[slot] = buyingPrice;
+    sellingPrices[slot] = sellingPrice;
+    this.units[slot] = units;
+    securityStocks[slot] = securityStock;
+    maxStocks[slot] = maxStock;
+    slots.put(code, slot);
+    return slot;
+  }
+
+  /**
+   * Quita un artículo de la tabla y deja libre su posición.
+   *
+   * @param code    Código del artículo.
+   * @throws WarehouseArticleNotExistsException     Si no existe el artículo.
+   */
+
+  public void remove(int code) throws WarehouseArticleNotExistsException {
+    int slot = slotOf(code);
+    slots.remove(code);
+    nameAndBrands.remove(Warehouse.nameAndBrandKey(names[slot], brands[slot]));
+    codes[slot] = EMPTY;
+    names[slot] = null;
+    brands[slot] = null;
+    if (freeCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  /**
+   * Incrementa las unidades de un artículo.
+   *
+   * @param code    Código del artículo.
+   * @param units   Unidades a incrementar.
+   * @throws WarehouseArticleNotExistsException     Si no existe el artículo.
+   * @throws ArticleIllegalArgumentException        Si las unidades son negativas o el artículo
+   *                                                pasaría de {@code Integer.MAX_VALUE} unidades.
+   */
+
+  public void incrementUnits(int code, int units) throws WarehouseArticleNotExistsException {
+    if (units < 0) {
+      throw new ArticleIllegalArgumentException("Las unidades a modificar no pueden ser negativa");
+    }
+    int slot = slotOf(code);
+    if (this.units[slot] > Integer.MAX_VALUE - units) {
+      throw new ArticleIllegalArgumentException("El articulo no puede tener tantas unidades");
+    }
+    this.units[slot] += units;
+  }
+
+  /**
+   * Decrementa las unidades de un artículo, nunca por debajo de cero.
+   *
+   * @param code    Código del artículo.
+   * @param units   Unidades a decrementar.
+   * @throws WarehouseArticleNotExistsException     Si no existe el artículo.
+   * @throws ArticleStockException                  Si no hay unidades suficientes.
+   */
+
+  public void decreaseUnits(int code, int units) throws WarehouseArticleNotExistsException, ArticleStockException {
+    if (units < 0) {
+      throw new ArticleIllegalArgumentException("Las unidades a modificar no pueden ser negativa");
+    }
+    int slot = slotOf(code);
+    if (this.units[slot] - units < 0) {
+      throw new ArticleStockException("El stock no puede ser inferior a 0", false);
+    }
+    this.units[slot] -= units;
+  }
+
+  /**
+   * Crea un artículo con los datos de la tabla. Es una copia independiente de la tabla.
+   *
+   * @param code    Código del artículo.
+   * @return        Artículo con los datos actuales.
+   * @throws WarehouseArticleNotExistsException     Si no existe el artículo.
+   */
+
+  public Article returnArticle(int code) throws WarehouseArticleNotExistsException {
+    int slot = slotOf(code);
+    return new Article(code, names[slot], brands[slot], buyingPrices[slot], sellingPrices[slot],
+        units[slot], securityStocks[slot], maxStocks[slot]);
+  }
+
+  /**
+   * Devuelve la posición de un artículo.
+   *
+   * @param code    Código del artículo.
+   * @return        Posición en las columnas.
+   * @throws WarehouseArticleNotExistsException     Si no existe el artículo.
+   */
+
+  public int slotOf(int code) throws WarehouseArticleNotExistsException {
+    int slot = slots.get(code, EMPTY);
+    if (slot == EMPTY) {
+      throw new WarehouseArticleNotExistsException("El articulo no existe", false);
+    }
+    return slot;
+  }
+
+  /**
+   * Recorre las posiciones ocupadas en orden.
+   *
+   * @param action    Acción que recibe cada posición.
+   */
+
+  public void forEachSlot(IntConsumer action) {
+    for (int slot = 0; slot < top; slot++) {
+      if (codes[slot] != EMPTY) {
+        action.accept(slot);
+      }
+    }
+  }
+
+  /**
+   * Suma las unidades de todos los artículos.
+   *
+   * @return    Unidades totales.
+   */
+
+  public long totalUnits() {
+    long total = 0;
+    for (int slot = 0; slot < top; slot++) {
+      if (codes[slot] != EMPTY) {
+        total += units[slot];
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Valor del inventario a precio de compra (unidades por precio de compra).
+   *
+   * @return    Valor del inventario.
+   */
+
+  public double inventoryValueAtCost() {
+    double total = 0;
+    for (int slot = 0; slot < top; slot++) {
+      if (codes[slot] != EMPTY) {
+        total += units[slot] * buyingPrices[slot];
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Cuenta los artículos cuyas unidades no llegan a su stock de seguridad.
+   *
+   * @return    Número de artículos bajo el stock de seguridad.
+   */
+
+  public int countBelowSecurityStock() {
+    int count = 0;
+    for (int slot = 0; slot < top; slot++) {
+      if (codes[slot] != EMPTY && units[slot] < securityStocks[slot]) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public int size() {
+    return slots.size();
+  }
+
+  public int getCode(int slot) {
+    return codes[slot];
+  }
+
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  public String getBrand(int slot) {
+    return brands[slot];
+  }
+
+  public double getBuyingPrice(int slot) {
+    return buyingPrices[slot];
+  }
+
+  public double getSellingPrice(int slot) {
+    return sellingPrices[slot];
+  }
+
+  public int getUnits(int slot) {
+    return units[slot];
+  }
+
+  public int getSecurityStock(int slot) {
+    return securityStocks[slot];
+  }
+
+  public int getMaxStock(int slot) {
+    return maxStocks[slot];
+  }
+
+  /**
+   * Devuelve la siguiente posición sin usar, haciendo crecer las columnas si hace falta.
+   *
+   * @return    Posición nueva.
+   */
+
+  private int nextSlot() {
+    if (top == codes.length) {
+      int capacity = codes.length + (codes.length >> 1);
+      codes = Arrays.copyOf(codes, capacity);
+      names = Arrays.copyOf(names, capacity);
+      brands = Arrays.copyOf(brands, capacity);
+      buyingPrices = Arrays.copyOf(buyingPrices, capacity);
+      sellingPrices = Arrays.copyOf(sellingPrices, capacity);
+      units = Arrays.copyOf(units, capacity);
+      securityStocks = Arrays.copyOf(securityStocks, capacity);
+      maxStocks = Arrays.copyOf(maxStocks, capacity);
+    }
+    return top++;
+  }
+}
@@ -0,0 +1,93 @@
+package gestisimal.classes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repartidor de códigos que entrega a cada hilo un bloque de códigos consecutivos.
+ * Cada hilo reparte los códigos de su bloque sin competir con los demás y solo accede
+ * al contador compartido cuando lo agota.
+ * Reparte códigos hasta {@code Integer.MAX_VALUE - 1}; {@code Integer.MAX_VALUE} marca que
+ * ya no quedan.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class BlockArticleCodeAllocator implements ArticleCodeAllocator {
+  /**
+   * Tamaño de bloque por defecto.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 64;
+  
+  /**
+   * Primer código que ya no se puede repartir.
+   */
+  private static final long LIMIT = Integer.MAX_VALUE;
+  
+  private final int blockSize;
+  /**
+   * Primer código del siguiente bloque que se entregará. Es long para que pedir bloques
+   * después de agotar los códigos no lo desborde.
+   */
+  private final AtomicLong nextBlock = new AtomicLong();
+  /**
+   * Menor código que se puede repartir, el mayor de los indicados en {@link #advanceTo(int)}.
+   * Los hilos descartan los códigos de su bloque que queden por debajo.
+   */
+  private final AtomicLong floor = new AtomicLong();
+  /**
+   * Bloque del hilo actual: siguiente código y fin del bloque.
+   */
+  private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[] {0, 0});
+  
+  /**
+   * Crea un repartidor con el tamaño de bloque por defecto.
+   */
+  public BlockArticleCodeAllocator() {
+    this(DEFAULT_BLOCK_SIZE);
+  }
+  
+  /**
+   * Crea un repartidor con el tamaño de bloque indicado.
+   * 
+   * @param blockSize   Códigos que se entregan a cada hilo de una vez.
+   */
+  public BlockArticleCodeAllocator(int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("El tamaño de bloque debe ser positivo");
+    }
+    this.blockSize = blockSize;
+  }
+
+  @Override
+  public int nextCode() {
+    long[] current = block.get();
+    long min = floor.get();
+    if (current[0] < min) {
+      // Se ha avanzado el contador dentro del bloque del hilo: se descartan los códigos anteriores
+      current[0] = Math.min(min, current[1]);
+    }
+    while (current[0] == current[1] || current[0] < min) {
+      current[0] = nextBlock.getAndAdd(blockSize);
+      current[1] = Math.min(current[0] + blockSize, LIMIT);
+      min = floor.get();
+      if (current[0] >= LIMIT) {
+        current[0] = current[1];
+        throw new IllegalStateException("No quedan códigos de artículo libres");
+      }
+    }
+    return (int) current[0]++;
+  }
+
+  @Override
+  public void advanceTo(int code) {
+    // Primero el contador, para que los bloques nuevos que se pidan al ver el suelo ya lo respeten
+    nextBlock.getAndAccumulate(code, Math::max);
+    floor.getAndAccumulate(code, Math::max);
+  }
+
+  @Override
+  public int getHighWaterMark() {
+    return (int) Math.min(nextBlock.get(), LIMIT);
+  }
+}
@@ -0,0 +1,24 @@
+package gestisimal.classes;
+
+/**
+ * Recibe los errores de los consumidores de {@link WarehouseChangeFeed}.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@FunctionalInterface
+public interface ChangeErrorHandler {
+
+  /**
+   * Un consumidor ha fallado al procesar un cambio. Se llama desde el hilo del consumidor, que
+   * sigue con el siguiente cambio al volver.
+   * 
+   * @param consumer    Nombre del consumidor.
+   * @param event       Cambio que estaba procesando. Solo es válido durante la llamada.
+   * @param sequence    Número de secuencia del cambio.
+   * @param error       Error del consumidor.
+   */
+  
+  void onError(String consumer, ChangeEvent event, long sequence, Exception error);
+}
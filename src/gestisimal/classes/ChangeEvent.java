@@ -0,0 +1,101 @@
+package gestisimal.classes;
+
+/**
+ * Cambio de un artículo publicado por {@link WarehouseChangeFeed}. Los eventos están creados de
+ * antemano en el anillo y se reutilizan, así que solo son válidos dentro de
+ * {@link ChangeHandler#onEvent(ChangeEvent, long, boolean)}: quien quiera guardarlos debe copiar
+ * sus datos.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public final class ChangeEvent {
+  private ChangeType type;
+  private int code;
+  private String name;
+  private String brand;
+  private double buyingPrice;
+  private double sellingPrice;
+  private int units;
+  private int delta;
+  private int securityStock;
+  private int maxStock;
+
+  ChangeEvent() {
+  }
+
+  /**
+   * Copia en el evento los datos del artículo. Se llama con el artículo bloqueado.
+   * 
+   * @param type      Tipo de cambio.
+   * @param article   Artículo que ha cambiado.
+   * @param delta     Variación de unidades, o cero si no es una entrada o salida.
+   */
+  
+  void set(ChangeType type, Article article, int delta) {
+    this.type = type;
+    this.code = article.getCode();
+    this.name = article.getName();
+    this.brand = article.getBrand();
+    this.buyingPrice = article.getBuyingPrice();
+    this.sellingPrice = article.getSellingPrice();
+    this.units = article.getUnits();
+    this.delta = delta;
+    this.securityStock = article.getSecurityStock();
+    this.maxStock = article.getMaxStock();
+  }
+
+  public ChangeType getType() {
+    return type;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getBrand() {
+    return brand;
+  }
+
+  public double getBuyingPrice() {
+    return buyingPrice;
+  }
+
+  public double getSellingPrice() {
+    return sellingPrice;
+  }
+
+  public int getUnits() {
+    return units;
+  }
+
+  /**
+   * Devuelve las unidades que han entrado (positivo) o salido (negativo) en un
+   * {@link ChangeType#UNITS_CHANGED}.
+   * 
+   * @return    Variación de unidades.
+   */
+  
+  public int getDelta() {
+    return delta;
+  }
+
+  public int getSecurityStock() {
+    return securityStock;
+  }
+
+  public int getMaxStock() {
+    return maxStock;
+  }
+
+  @Override
+  public String toString() {
+    return "ChangeEvent [type=" + type + ", code=" + code + ", name=" + name + ", brand=" + brand + ", units=" + units
+        + ", delta=" + delta + "]";
+  }
+}
@@ -0,0 +1,27 @@
+package gestisimal.classes;
+
+/**
+ * Consumidor de los cambios publicados por {@link WarehouseChangeFeed}. Cada consumidor recibe
+ * todos los cambios, en orden, desde su propio hilo.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@FunctionalInterface
+public interface ChangeHandler {
+
+  /**
+   * Procesa un cambio. Los cambios llegan en lotes: todos los que estaban publicados cuando el
+   * consumidor fue a leer. {@code endOfBatch} indica el último del lote, el momento de volcar lo
+   * acumulado (por ejemplo, enviar una petición con todos los cambios del lote).
+   * 
+   * @param event         Cambio. Solo es válido durante la llamada.
+   * @param sequence      Número de secuencia del cambio.
+   * @param endOfBatch    Si es el último cambio del lote.
+   * @throws Exception    Si falla el proceso. Se pasa al {@link ChangeErrorHandler} de la
+   *                      publicación y se sigue con el siguiente cambio.
+   */
+  
+  void onEvent(ChangeEvent event, long sequence, boolean endOfBatch) throws Exception;
+}
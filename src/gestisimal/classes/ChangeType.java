@@ -0,0 +1,27 @@
+package gestisimal.classes;
+
+/**
+ * Tipos de cambio que publica {@link WarehouseChangeFeed}.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public enum ChangeType {
+  /**
+   * Alta de un artículo. El evento lleva todos sus datos.
+   */
+  ADDED,
+  /**
+   * Baja de un artículo. El evento lleva sus datos en el momento de la baja.
+   */
+  DELETED,
+  /**
+   * Modificación de un artículo. El evento lleva todos sus datos nuevos.
+   */
+  MODIFIED,
+  /**
+   * Entrada o salida de mercancía. El evento lleva las unidades nuevas y la variación.
+   */
+  UNITS_CHANGED
+}
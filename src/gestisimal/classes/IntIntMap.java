@@ -0,0 +1,145 @@
+package gestisimal.classes;
+
+import java.util.Arrays;
+
+/**
+ * Tabla hash de enteros a enteros con direccionamiento abierto, sin objetos por entrada.
+ * Solo admite claves no negativas, como los códigos de artículo. Las negativas, entre ellas la
+ * -1 que marca las posiciones libres, nunca están.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+class IntIntMap {
+  private static final int FREE = -1;
+  
+  private int[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+  
+  /**
+   * Crea una tabla con sitio para el número de entradas indicado sin crecer.
+   * 
+   * @param expected    Número de entradas previsto.
+   */
+  
+  IntIntMap(int expected) {
+    int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+    allocate(capacity);
+  }
+  
+  /**
+   * Devuelve el valor de la clave.
+   * 
+   * @param key             Clave.
+   * @param missingValue    Valor a devolver si no está.
+   * @return                Valor asociado o missingValue.
+   */
+  
+  int get(int key, int missingValue) {
+    if (key < 0) {
+      return missingValue;
+    }
+    for (int i = slot(key); ; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+      if (keys[i] == FREE) {
+        return missingValue;
+      }
+    }
+  }
+  
+  /**
+   * Asocia el valor a la clave.
+   * 
+   * @param key     Clave no negativa.
+   * @param value   Valor.
+   */
+  
+  void put(int key, int value) {
+    if (key < 0) {
+      throw new IllegalArgumentException("La clave no puede ser negativa");
+    }
+    int i = slot(key);
+    while (keys[i] != FREE && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    if (keys[i] == FREE) {
+      keys[i] = key;
+      if (++size * 2 > keys.length) {
+        values[i] = value;
+        rehash(keys.length * 2);
+        return;
+      }
+    }
+    values[i] = value;
+  }
+  
+  /**
+   * Quita la clave desplazando hacia atrás las entradas que la seguían, sin dejar marcas de borrado.
+   * 
+   * @param key   Clave.
+   * @return      Si estaba.
+   */
+  
+  boolean remove(int key) {
+    if (key < 0) {
+      return false;
+    }
+    int i = slot(key);
+    while (keys[i] != key) {
+      if (keys[i] == FREE) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    size--;
+    int gap = i;
+    for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+      int home = slot(keys[j]);
+      // La entrada j puede ocupar el hueco si su posición natural no está entre el hueco y j
+      if (((j - home) & mask) >= ((j - gap) & mask)) {
+        keys[gap] = keys[j];
+        values[gap] = values[j];
+        gap = j;
+      }
+    }
+    keys[gap] = FREE;
+    return true;
+  }
+  
+  int size() {
+    return size;
+  }
+  
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+  
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, FREE);
+    mask = capacity - 1;
+  }
+  
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        int j = slot(oldKeys[i]);
+        while (keys[j] != FREE) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+}
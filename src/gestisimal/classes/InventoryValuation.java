@@ -0,0 +1,104 @@
+package gestisimal.classes;
+
+/**
+ * Valoración de un conjunto de artículos: unidades, valor a precio de compra, valor a precio de
+ * venta y margen bruto.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class InventoryValuation {
+  private long units;
+  private double valueAtCost;
+  private double valueAtRetail;
+  
+  /**
+   * Crea una valoración vacía.
+   */
+  InventoryValuation() {
+  }
+  
+  /**
+   * Suma un artículo a la valoración.
+   * 
+   * @param article   Artículo a sumar.
+   */
+  
+  void add(Article article) {
+    int aux = article.getUnits();
+    units += aux;
+    valueAtCost += aux * article.getBuyingPrice();
+    valueAtRetail += aux * article.getSellingPrice();
+  }
+  
+  /**
+   * Suma otra valoración parcial a esta.
+   * 
+   * @param other   Valoración parcial.
+   * @return        Esta valoración.
+   */
+  
+  InventoryValuation combine(InventoryValuation other) {
+    units += other.units;
+    valueAtCost += other.valueAtCost;
+    valueAtRetail += other.valueAtRetail;
+    return this;
+  }
+  
+  /**
+   * Devuelve las unidades totales
+   * 
+   * @return
+   */
+  
+  public long getUnits() {
+    return units;
+  }
+  
+  /**
+   * Devuelve el valor del inventario a precio de compra (unidades por precio de compra)
+   * 
+   * @return
+   */
+  
+  public double getValueAtCost() {
+    return valueAtCost;
+  }
+  
+  /**
+   * Devuelve el valor del inventario a precio de venta (unidades por precio de venta)
+   * 
+   * @return
+   */
+  
+  public double getValueAtRetail() {
+    return valueAtRetail;
+  }
+  
+  /**
+   * Devuelve el margen bruto, la diferencia entre el valor a precio de venta y a precio de compra
+   * 
+   * @return
+   */
+  
+  public double getGrossMargin() {
+    return valueAtRetail - valueAtCost;
+  }
+  
+  /**
+   * Devuelve el margen bruto en porcentaje sobre el valor a precio de venta
+   * 
+   * @return    Porcentaje de margen o 0 si no hay valor de venta
+   */
+  
+  public double getGrossMarginPercent() {
+    return valueAtRetail == 0 ? 0 : getGrossMargin() * 100 / valueAtRetail;
+  }
+
+  @Override
+  public String toString() {
+    return "InventoryValuation [units=" + units + ", valueAtCost=" + valueAtCost + ", valueAtRetail="
+        + valueAtRetail + ", grossMargin=" + getGrossMargin() + "]";
+  }
+}
@@ -0,0 +1,70 @@
+package gestisimal.classes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resultado de aplicar un lote de movimientos. Si alguna línea no es válida no se aplica ninguna
+ * y aquí queda el motivo de cada línea rechazada.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class MovementBatchResult {
+  private final MovementStatus[] statuses;
+  private final int rejected;
+  
+  /**
+   * Crea el resultado
+   * 
+   * @param statuses    Estado de cada línea
+   * @param rejected    Número de líneas rechazadas
+   */
+  MovementBatchResult(MovementStatus[] statuses, int rejected) {
+    this.statuses = statuses;
+    this.rejected = rejected;
+  }
+  
+  /**
+   * Indica si se ha aplicado el lote, es decir, si no se ha rechazado ninguna línea
+   * 
+   * @return
+   */
+  
+  public boolean isApplied() {
+    return rejected == 0;
+  }
+  
+  /**
+   * Devuelve el estado de una línea
+   * 
+   * @param line    Posición de la línea en el lote
+   * @return        Estado de la línea
+   */
+  
+  public MovementStatus getStatus(int line) {
+    return statuses[line];
+  }
+  
+  /**
+   * Devuelve las posiciones de las líneas rechazadas
+   * 
+   * @return
+   */
+  
+  public List<Integer> getRejectedLines() {
+    List<Integer> lines = new ArrayList<Integer>(rejected);
+    for (int i = 0; i < statuses.length && lines.size() < rejected; i++) {
+      if (statuses[i] != MovementStatus.OK) {
+        lines.add(i);
+      }
+    }
+    return lines;
+  }
+
+  @Override
+  public String toString() {
+    return "MovementBatchResult [lines=" + statuses.length + ", rejected=" + rejected + "]";
+  }
+}
@@ -0,0 +1,337 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Aplica a un almacén, sin interacción, ficheros CSV de movimientos con una línea por movimiento:
+ *
+ * <pre>
+ * E,codigo,unidades                      entrada de mercancía
+ * S,codigo,unidades                      salida de mercancía
+ * P,codigo,precioCompra,precioVenta      cambio de precios
+ * </pre>
+ *
+ * Los campos se separan con coma o punto y coma y los decimales llevan punto. Las líneas vacías y
+ * las que empiezan por {@code #} se ignoran. Cada línea se aplica por separado con las operaciones
+ * que no lanzan excepciones del almacén ({@link Warehouse#tryIncrementUnitsOfArticle},
+ * {@link Warehouse#tryDecreaseUnitsOfArticle} y {@link Warehouse#tryChangePricesOfArticle}), en el
+ * orden del fichero, y las que no se pueden aplicar se cuentan en el {@link MovementFileSummary}.
+ *
+ * <p>El fichero se lee por bloques con un {@link FileChannel} en un búfer que se reutiliza y los
+ * números se interpretan directamente de los bytes, sin crear cadenas; solo se decodifica el
+ * texto de las primeras líneas rechazadas para el resumen.</p>
+ *
+ * <pre>
+ * java gestisimal.classes.MovementFileProcessor Warehouse.xml movimientos.csv... [-o Salida.xml]
+ * </pre>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class MovementFileProcessor {
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int MAX_FIELDS = 4;
+  private static final long INVALID_NUMBER = Long.MIN_VALUE;
+  /**
+   * Potencias de diez exactas en double, para los decimales.
+   */
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+  private final Warehouse warehouse;
+  private final byte[] bytes = new byte[BUFFER_SIZE];
+  private final int[] fieldStart = new int[MAX_FIELDS];
+  private final int[] fieldEnd = new int[MAX_FIELDS];
+
+  /**
+   * Crea el procesador de ficheros de movimientos de un almacén. Cada procesador tiene su propio
+   * búfer y no se debe usar desde varios hilos a la vez.
+   *
+   * @param warehouse   Almacén al que se aplican los movimientos.
+   */
+
+  public MovementFileProcessor(Warehouse warehouse) {
+    this.warehouse = warehouse;
+  }
+
+  /**
+   * Aplica al almacén los movimientos de un fichero.
+   *
+   * @param file    Ruta del fichero CSV.
+   * @return        Resumen con los movimientos aplicados y las líneas rechazadas.
+   * @throws IOException    Si no se puede leer el fichero.
+   */
+
+  public MovementFileSummary process(Path file) throws IOException {
+    MovementFileSummary summary = new MovementFileSummary(file.toString());
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      long line = 0;
+      boolean skipping = false;
+      int read;
+      do {
+        read = channel.read(buffer);
+        int limit = buffer.position();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+          if (bytes[i] == '\n') {
+            line++;
+            if (skipping) {
+              skipping = false;
+            } else {
+              processLine(lineStart, i, line, summary);
+            }
+            lineStart = i + 1;
+          }
+        }
+        if (read < 0) {
+          if (lineStart < limit && !skipping) {
+            processLine(lineStart, limit, ++line, summary);
+          }
+        } else if (lineStart == 0 && limit == bytes.length) {
+          // Una línea que no cabe en el búfer no es un movimiento: se descarta hasta su final
+          if (!skipping) {
+            summary.lineRead();
+            summary.malformed(line + 1, "línea demasiado larga", null);
+            skipping = true;
+          }
+          lineStart = limit;
+        }
+        System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+        buffer.position(limit - lineStart);
+      } while (read >= 0);
+    } finally {
+      summary.setElapsedNanos(System.nanoTime() - start);
+    }
+    return summary;
+  }
+
+  /**
+   * Interpreta una línea del búfer y aplica su movimiento.
+   *
+   * @param start     Posición del primer byte de la línea.
+   * @param end       Posición siguiente al último byte, sin el salto de línea.
+   * @param line      Número de línea.
+   * @param summary   Resumen donde se cuenta el resultado.
+   */
+
+  private void processLine(int start, int end, long line, MovementFileSummary summary) {
+    summary.lineRead();
+    if (end > start && bytes[end - 1] == '\r') {
+      end--;
+    }
+    int fields = split(start, end);
+    if (fields == 0) {
+      return;
+    }
+    if (fields < 0) {
+      summary.malformed(line, "demasiados campos", text(start, end, summary));
+      return;
+    }
+    if (fieldEnd[0] - fieldStart[0] != 1) {
+      summary.malformed(line, "tipo de movimiento desconocido", text(start, end, summary));
+      return;
+    }
+    byte type = bytes[fieldStart[0]];
+    switch (type) {
+      case 'E', 'e', 'S', 's' -> {
+        long code = fields == 3 ? parseLong(1) : INVALID_NUMBER;
+        long units = fields == 3 ? parseLong(2) : INVALID_NUMBER;
+        if (!isInt(code) || !isInt(units)) {
+          summary.malformed(line, "se esperaba tipo, código y unidades enteros", text(start, end, summary));
+          return;
+        }
+        boolean receipt = type == 'E' || type == 'e';
+        MovementStatus status = receipt
+            ? warehouse.tryIncrementUnitsOfArticle((int) code, (int) units)
+            : warehouse.tryDecreaseUnitsOfArticle((int) code, (int) units);
+        if (status != MovementStatus.OK) {
+          summary.rejected(line, status, text(start, end, summary));
+        } else if (receipt) {
+          summary.receiptApplied();
+        } else {
+          summary.shipmentApplied();
+        }
+      }
+      case 'P', 'p' -> {
+        long code = fields == 4 ? parseLong(1) : INVALID_NUMBER;
+        double buyingPrice = fields == 4 ? parseDouble(2) : Double.NaN;
+        double sellingPrice = fields == 4 ? parseDouble(3) : Double.NaN;
+        if (!isInt(code) || Double.isNaN(buyingPrice) || Double.isNaN(sellingPrice)) {
+          summary.malformed(line, "se esperaba tipo, código y dos precios", text(start, end, summary));
+          return;
+        }
+        MovementStatus status = warehouse.tryChangePricesOfArticle((int) code, buyingPrice, sellingPrice);
+        if (status != MovementStatus.OK) {
+          summary.rejected(line, status, text(start, end, summary));
+        } else {
+          summary.priceChangeApplied();
+        }
+      }
+      default -> summary.malformed(line, "tipo de movimiento desconocido", text(start, end, summary));
+    }
+  }
+
+  /**
+   * Separa los campos de la línea quitando los espacios de alrededor.
+   *
+   * @param start   Posición del primer byte de la línea.
+   * @param end     Posición siguiente al último byte de la línea.
+   * @return        Número de campos, 0 si la línea está vacía o es un comentario, o -1 si tiene
+   *                demasiados campos.
+   */
+
+  private int split(int start, int end) {
+    while (start < end && bytes[start] == ' ') {
+      start++;
+    }
+    if (start == end || bytes[start] == '#') {
+      return 0;
+    }
+    int count = 0;
+    fieldStart[0] = start;
+    for (int i = start; i < end; i++) {
+      byte b = bytes[i];
+      if (b == ',' || b == ';') {
+        if (count == MAX_FIELDS - 1) {
+          return -1;
+        }
+        fieldEnd[count++] = i;
+        fieldStart[count] = i + 1;
+      }
+    }
+    fieldEnd[count++] = end;
+    for (int i = 0; i < count; i++) {
+      while (fieldStart[i] < fieldEnd[i] && bytes[fieldStart[i]] == ' ') {
+        fieldStart[i]++;
+      }
+      while (fieldEnd[i] > fieldStart[i] && bytes[fieldEnd[i] - 1] == ' ') {
+        fieldEnd[i]--;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Interpreta un campo como entero con signo.
+   *
+   * @param field   Índice del campo.
+   * @return        Valor, o {@link #INVALID_NUMBER} si no es un entero de como mucho 18 cifras.
+   */
+
+  private long parseLong(int field) {
+    int i = fieldStart[field];
+    int end = fieldEnd[field];
+    boolean negative = i < end && bytes[i] == '-';
+    if (negative || (i < end && bytes[i] == '+')) {
+      i++;
+    }
+    if (i == end || end - i > 18) {
+      return INVALID_NUMBER;
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return INVALID_NUMBER;
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Interpreta un campo como número decimal con punto. Con hasta 15 cifras significativas el
+   * resultado es el mismo que el de {@link Double#parseDouble(String)}, porque la mantisa y la
+   * potencia de diez son exactas y la división se redondea una sola vez.
+   *
+   * @param field   Índice del campo.
+   * @return        Valor, o NaN si no es un número de ese tipo.
+   */
+
+  private double parseDouble(int field) {
+    int i = fieldStart[field];
+    int end = fieldEnd[field];
+    boolean negative = i < end && bytes[i] == '-';
+    if (negative || (i < end && bytes[i] == '+')) {
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int scale = -1;
+    for (; i < end; i++) {
+      byte b = bytes[i];
+      if (b == '.' && scale < 0) {
+        scale = 0;
+        continue;
+      }
+      int digit = b - '0';
+      if (digit < 0 || digit > 9 || ++digits > 15) {
+        return Double.NaN;
+      }
+      mantissa = mantissa * 10 + digit;
+      if (scale >= 0) {
+        scale++;
+      }
+    }
+    if (digits == 0) {
+      return Double.NaN;
+    }
+    double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+    return negative ? -value : value;
+  }
+
+  private static boolean isInt(long value) {
+    return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+  }
+
+  /**
+   * Decodifica el texto de la línea solo si el resumen aún guarda líneas rechazadas.
+   */
+
+  private String text(int start, int end, MovementFileSummary summary) {
+    return summary.wantsSamples() ? new String(bytes, start, end - start, StandardCharsets.UTF_8) : null;
+  }
+
+  public static void main(String[] args) {
+    int files = args.length;
+    String output = null;
+    if (files >= 2 && args[files - 2].equals("-o")) {
+      output = args[files - 1];
+      files -= 2;
+    }
+    if (files < 2) {
+      System.err.println("Uso: MovementFileProcessor <almacen.xml|almacen.bin> <movimientos.csv>... [-o <salida.xml|salida.bin>]");
+      System.exit(2);
+    }
+    try {
+      Warehouse warehouse = isBinary(args[0]) ? Warehouse.loadBinary(args[0]) : new Warehouse(args[0]);
+      MovementFileProcessor processor = new MovementFileProcessor(warehouse);
+      for (int i = 1; i < files; i++) {
+        processor.process(Path.of(args[i])).writeTo(System.out);
+      }
+      if (output != null) {
+        if (isBinary(output)) {
+          warehouse.saveBinary(output);
+        } else {
+          warehouse.save(output);
+        }
+      }
+    } catch (WarehousePersistenceException | IOException e) {
+      System.err.println("ERROR: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private static boolean isBinary(String route) {
+    return route.endsWith(".bin");
+  }
+}
@@ -0,0 +1,210 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resumen de un fichero de movimientos procesado por {@link MovementFileProcessor}: líneas
+ * leídas, movimientos aplicados de cada tipo y líneas rechazadas por cada motivo. De las líneas
+ * rechazadas solo se guardan las primeras, para que un fichero con muchos errores no llene la
+ * memoria.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class MovementFileSummary {
+  /**
+   * Número máximo de líneas rechazadas que se guardan con su texto.
+   */
+  public static final int MAX_SAMPLES = 100;
+
+  private final String file;
+  private long lines;
+  private long receipts;
+  private long shipments;
+  private long priceChanges;
+  private long malformed;
+  private final long[] rejected = new long[MovementStatus.values().length];
+  private final List<String> samples = new ArrayList<String>();
+  private long elapsedNanos;
+
+  MovementFileSummary(String file) {
+    this.file = file;
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Devuelve el número de líneas del fichero, incluidas las vacías y los comentarios.
+   *
+   * @return    Líneas leídas.
+   */
+
+  public long getLines() {
+    return lines;
+  }
+
+  public long getReceipts() {
+    return receipts;
+  }
+
+  public long getShipments() {
+    return shipments;
+  }
+
+  public long getPriceChanges() {
+    return priceChanges;
+  }
+
+  /**
+   * Devuelve el número de líneas que no se han podido interpretar.
+   *
+   * @return    Líneas mal formadas.
+   */
+
+  public long getMalformedLines() {
+    return malformed;
+  }
+
+  /**
+   * Devuelve el número de movimientos que el almacén ha rechazado por un motivo.
+   *
+   * @param status    Motivo del rechazo.
+   * @return          Movimientos rechazados.
+   */
+
+  public long getRejected(MovementStatus status) {
+    return rejected[status.ordinal()];
+  }
+
+  /**
+   * Devuelve el número total de líneas rechazadas, mal formadas o no.
+   *
+   * @return    Líneas rechazadas.
+   */
+
+  public long getRejectedLines() {
+    long total = malformed;
+    for (long count : rejected) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * Devuelve las primeras líneas rechazadas con su número, el motivo y su texto.
+   *
+   * @return    Líneas rechazadas, como mucho {@link #MAX_SAMPLES}.
+   */
+
+  public List<String> getRejectedSamples() {
+    return Collections.unmodifiableList(samples);
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Escribe el resumen en varias líneas.
+   *
+   * @param out     Destino del resumen.
+   * @throws IOException    Si falla la escritura.
+   */
+
+  public void writeTo(Appendable out) throws IOException {
+    String nl = System.lineSeparator();
+    double seconds = elapsedNanos / 1e9;
+    out.append("Fichero ").append(file).append(": ").append(Long.toString(lines)).append(" líneas en ")
+        .append(String.format("%.3f", seconds)).append(" s (")
+        .append(Long.toString(seconds > 0 ? (long) (lines / seconds) : lines)).append(" líneas/s)").append(nl);
+    out.append("  Entradas aplicadas: ").append(Long.toString(receipts)).append(nl);
+    out.append("  Salidas aplicadas: ").append(Long.toString(shipments)).append(nl);
+    out.append("  Cambios de precio aplicados: ").append(Long.toString(priceChanges)).append(nl);
+    out.append("  Líneas rechazadas: ").append(Long.toString(getRejectedLines())).append(nl);
+    if (malformed > 0) {
+      out.append("    Mal formadas: ").append(Long.toString(malformed)).append(nl);
+    }
+    for (MovementStatus status : MovementStatus.values()) {
+      if (rejected[status.ordinal()] > 0) {
+        out.append("    ").append(status.name()).append(": ").append(Long.toString(rejected[status.ordinal()])).append(nl);
+      }
+    }
+    for (String sample : samples) {
+      out.append("    ").append(sample).append(nl);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MovementFileSummary [file=" + file + ", lines=" + lines + ", receipts=" + receipts
+        + ", shipments=" + shipments + ", priceChanges=" + priceChanges + ", rejected=" + getRejectedLines() + "]";
+  }
+
+  void lineRead() {
+    lines++;
+  }
+
+  void receiptApplied() {
+    receipts++;
+  }
+
+  void shipmentApplied() {
+    shipments++;
+  }
+
+  void priceChangeApplied() {
+    priceChanges++;
+  }
+
+  /**
+   * Cuenta una línea que no se ha podido interpretar.
+   *
+   * @param line      Número de línea.
+   * @param reason    Motivo.
+   * @param text      Texto de la línea, o null si no se guarda.
+   */
+
+  void malformed(long line, String reason, String text) {
+    malformed++;
+    sample(line, reason, text);
+  }
+
+  /**
+   * Cuenta un movimiento rechazado por el almacén.
+   *
+   * @param line      Número de línea.
+   * @param status    Motivo del rechazo.
+   * @param text      Texto de la línea.
+   */
+
+  void rejected(long line, MovementStatus status, String text) {
+    rejected[status.ordinal()]++;
+    sample(line, status.name(), text);
+  }
+
+  /**
+   * Indica si todavía se guarda el texto de las líneas rechazadas, para no leerlo si no.
+   *
+   * @return    Si caben más líneas rechazadas.
+   */
+
+  boolean wantsSamples() {
+    return samples.size() < MAX_SAMPLES;
+  }
+
+  void setElapsedNanos(long elapsedNanos) {
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  private void sample(long line, String reason, String text) {
+    if (wantsSamples()) {
+      samples.add("línea " + line + ": " + reason + (text != null ? ": " + text : ""));
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package gestisimal.classes;
+
+/**
+ * Resultado de un movimiento de mercancía.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public enum MovementStatus {
+  /**
+   * El movimiento es válido o se ha aplicado.
+   */
+  OK,
+  /**
+   * No existe ningún artículo con ese código.
+   */
+  ARTICLE_NOT_FOUND,
+  /**
+   * No hay unidades suficientes para la salida.
+   */
+  INSUFFICIENT_STOCK,
+  /**
+   * Las unidades del movimiento son negativas.
+   */
+  INVALID_UNITS,
+  /**
+   * La entrada dejaría más unidades de las que se pueden guardar.
+   */
+  TOO_MANY_UNITS,
+  /**
+   * El precio es negativo o no es un número.
+   */
+  INVALID_PRICE
+}
@@ -0,0 +1,55 @@
+package gestisimal.classes;
+
+/**
+ * Línea de un pedido de reposición: un artículo y las unidades que hay que pedir para llegar a su
+ * stock máximo.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ReplenishmentLine {
+  private final int code;
+  private final int quantity;
+  private final double unitCost;
+  
+  /**
+   * Crea una línea de reposición
+   * 
+   * @param code        Código del artículo
+   * @param quantity    Unidades a pedir
+   * @param unitCost    Precio de compra por unidad
+   */
+  ReplenishmentLine(int code, int quantity, double unitCost) {
+    this.code = code;
+    this.quantity = quantity;
+    this.unitCost = unitCost;
+  }
+  
+  public int getCode() {
+    return code;
+  }
+  
+  public int getQuantity() {
+    return quantity;
+  }
+  
+  public double getUnitCost() {
+    return unitCost;
+  }
+  
+  /**
+   * Devuelve el coste de la línea
+   * 
+   * @return    Unidades por precio de compra
+   */
+  
+  public double getCost() {
+    return quantity * unitCost;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplenishmentLine [code=" + code + ", quantity=" + quantity + ", unitCost=" + unitCost + "]";
+  }
+}
@@ -0,0 +1,87 @@
+package gestisimal.classes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pedido de reposición a un proveedor. Como los artículos no tienen proveedor se agrupan por marca.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ReplenishmentOrder {
+  private final String brand;
+  private final List<ReplenishmentLine> lines = new ArrayList<ReplenishmentLine>();
+  private long units;
+  private double cost;
+  
+  /**
+   * Crea un pedido vacío
+   * 
+   * @param brand   Marca a la que se hace el pedido
+   */
+  ReplenishmentOrder(String brand) {
+    this.brand = brand;
+  }
+  
+  /**
+   * Añade una línea al pedido
+   * 
+   * @param line    Línea de reposición
+   */
+  
+  void add(ReplenishmentLine line) {
+    lines.add(line);
+    units += line.getQuantity();
+    cost += line.getCost();
+  }
+  
+  /**
+   * Añade al pedido las líneas de otro pedido parcial de la misma marca
+   * 
+   * @param other   Pedido parcial
+   * @return        Este pedido
+   */
+  
+  ReplenishmentOrder combine(ReplenishmentOrder other) {
+    lines.addAll(other.lines);
+    units += other.units;
+    cost += other.cost;
+    return this;
+  }
+  
+  public String getBrand() {
+    return brand;
+  }
+  
+  public List<ReplenishmentLine> getLines() {
+    return Collections.unmodifiableList(lines);
+  }
+  
+  /**
+   * Devuelve las unidades totales del pedido
+   * 
+   * @return
+   */
+  
+  public long getUnits() {
+    return units;
+  }
+  
+  /**
+   * Devuelve el coste total del pedido a precio de compra
+   * 
+   * @return
+   */
+  
+  public double getCost() {
+    return cost;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplenishmentOrder [brand=" + brand + ", lines=" + lines.size() + ", units=" + units + ", cost=" + cost + "]";
+  }
+}
@@ -0,0 +1,80 @@
+package gestisimal.classes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Planificador de reposición. Calcula, para cada artículo cuyas unidades están en su stock de
+ * seguridad o por debajo, cuántas unidades hay que pedir para llegar a su stock máximo, y agrupa
+ * las líneas por marca valoradas a precio de compra.
+ * 
+ * <p>Parte del índice de artículos a reponer que el almacén mantiene con cada cambio, así que el
+ * coste depende de cuántos artículos hay que reponer y no del tamaño del catálogo. Si son muchos
+ * se reparten entre hilos: cada tarea acumula sus propios pedidos parciales y al final se
+ * combinan, así que las tareas no comparten nada mientras trabajan.</p>
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class ReplenishmentPlanner {
+  private final Warehouse warehouse;
+  
+  /**
+   * Crea un planificador para el almacén indicado.
+   * 
+   * @param warehouse   Almacén a reponer.
+   */
+  public ReplenishmentPlanner(Warehouse warehouse) {
+    this.warehouse = warehouse;
+  }
+  
+  /**
+   * Calcula los pedidos de reposición.
+   * 
+   * @return    Pedido de cada marca que necesita reposición, ordenados por marca.
+   */
+  
+  public Map<String, ReplenishmentOrder> plan() {
+    Map<String, ReplenishmentOrder> orders = ArticleStreams.of(warehouse.articlesAtOrBelowSecurityStock())
+        .collect(HashMap::new, ReplenishmentPlanner::accumulate,
+            (map, other) -> other.forEach((brand, order) -> map.merge(brand, order, ReplenishmentOrder::combine)));
+    return new TreeMap<String, ReplenishmentOrder>(orders);
+  }
+  
+  /**
+   * Añade el artículo al pedido de su marca si hay que reponerlo. Sus datos se leen con su cerrojo
+   * tomado para no mezclar los de antes y después de un cambio; el índice puede traer artículos
+   * que ya se han repuesto, así que se vuelve a comprobar.
+   * 
+   * @param orders    Pedidos parciales de la tarea.
+   * @param article   Artículo a revisar.
+   */
+  
+  private static void accumulate(Map<String, ReplenishmentOrder> orders, Article article) {
+    int code;
+    int quantity;
+    double buyingPrice;
+    String brand;
+    synchronized (article) {
+      int units = article.getUnits();
+      if (units > article.getSecurityStock()) {
+        return;
+      }
+      code = article.getCode();
+      quantity = article.getMaxStock() - units;
+      buyingPrice = article.getBuyingPrice();
+      brand = article.getBrand();
+    }
+    if (quantity <= 0) {
+      return;
+    }
+    ReplenishmentOrder order = orders.get(brand);
+    if (order == null) {
+      order = new ReplenishmentOrder(brand);
+      orders.put(brand, order);
+    }
+    order.add(new ReplenishmentLine(code, quantity, buyingPrice));
+  }
+}
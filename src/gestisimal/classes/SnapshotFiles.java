@@ -0,0 +1,112 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import gestisimal.monitoring.WarehouseSaveEvent;
+
+/**
+ * Utilidades para escribir ficheros del almacén sin dejarlos nunca a medias.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+final class SnapshotFiles {
+  
+  private SnapshotFiles() {
+  }
+  
+  /**
+   * Escritura sobre el canal de un fichero temporal.
+   */
+  
+  @FunctionalInterface
+  interface ChannelWriter {
+    void write(FileChannel channel) throws Exception;
+  }
+  
+  /**
+   * Escribe el fichero en un temporal del mismo directorio, lo sincroniza con el disco y lo
+   * renombra al destino.
+   * 
+   * @param target    Fichero destino.
+   * @param writer    Escritura del contenido.
+   * @return          Tamaño en bytes del fichero escrito.
+   * @throws Exception    La excepción que lance la escritura o IOException si falla el fichero.
+   */
+  
+  static long writeAtomically(Path target, ChannelWriter writer) throws Exception {
+    target = target.toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+    try {
+      long size;
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        writer.write(channel);
+        channel.force(true);
+        size = channel.size();
+      }
+      move(temp, target);
+      return size;
+    } finally {
+      deleteQuietly(temp);
+    }
+  }
+  
+  /**
+   * Registra el evento de Java Flight Recorder de un guardado si se está grabando.
+   * 
+   * @param event           Evento empezado al comenzar el guardado.
+   * @param fileName        Fichero guardado.
+   * @param format          Formato del fichero.
+   * @param articleCount    Artículos escritos.
+   * @param bytesWritten    Tamaño del fichero, o negativo si el guardado ha fallado.
+   */
+  
+  static void commit(WarehouseSaveEvent event, String fileName, String format, int articleCount, long bytesWritten) {
+    if (event.shouldCommit()) {
+      event.file = fileName;
+      event.format = format;
+      event.articleCount = articleCount;
+      event.bytesWritten = Math.max(bytesWritten, 0);
+      event.succeeded = bytesWritten >= 0;
+      event.commit();
+    }
+  }
+  
+  /**
+   * Sustituye el destino por el fichero temporal, de forma atómica si el sistema de ficheros lo permite.
+   * 
+   * @param temp      Fichero temporal ya escrito.
+   * @param target    Fichero destino.
+   * @throws IOException    Si no se puede renombrar.
+   */
+  
+  static void move(Path temp, Path target) throws IOException {
+    try {
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+  
+  /**
+   * Borra el fichero si existe sin lanzar excepciones.
+   * 
+   * @param file    Fichero a borrar o null.
+   */
+  
+  static void deleteQuietly(Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // El temporal se queda huérfano pero el destino no se ha tocado
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package gestisimal.classes;
+
+/**
+ * Línea de un documento de entrada o salida de mercancía.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class StockMovement {
+  private final int code;
+  private final int units;
+  private final boolean increment;
+  
+  private StockMovement(int code, int units, boolean increment) {
+    this.code = code;
+    this.units = units;
+    this.increment = increment;
+  }
+  
+  /**
+   * Crea una entrada de mercancía
+   * 
+   * @param code    Código del artículo
+   * @param units   Unidades que entran
+   * @return        Movimiento de entrada
+   */
+  
+  public static StockMovement increment(int code, int units) {
+    return new StockMovement(code, units, true);
+  }
+  
+  /**
+   * Crea una salida de mercancía
+   * 
+   * @param code    Código del artículo
+   * @param units   Unidades que salen
+   * @return        Movimiento de salida
+   */
+  
+  public static StockMovement decrement(int code, int units) {
+    return new StockMovement(code, units, false);
+  }
+  
+  public int getCode() {
+    return code;
+  }
+  
+  public int getUnits() {
+    return units;
+  }
+  
+  public boolean isIncrement() {
+    return increment;
+  }
+  
+  /**
+   * Devuelve la variación de unidades: positiva si entran y negativa si salen
+   * 
+   * @return
+   */
+  
+  int delta() {
+    return increment ? units : -units;
+  }
+
+  @Override
+  public String toString() {
+    return "StockMovement [code=" + code + ", units=" + units + ", increment=" + increment + "]";
+  }
+}
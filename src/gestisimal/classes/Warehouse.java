@@ -1,343 +1,1308 @@
-package gestisimal.classes;
-
-
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import org.w3c.dom.Attr;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import gestisimal.exceptions.WarehouseArticleRepeatedException;
-import gestisimal.exceptions.ArticleStockException;
-import gestisimal.exceptions.WarehouseArticleNotExistsException;
-
-
-/**
- * Clase Almacén que realice el alta, baja, modificación, entrada de mercancía (incrementa unidades), salida de mercancía (decrementa unidades).
- * El estado será un ArrayList de artículos (pero la clase no será un ArrayList)
- * Su comportamiento será: añadir artículos (no puede haber dos artículos con el mismo nombre y marca), eliminar artículos, 
- * incrementar las existencias de un artículo (se delega en la clase Artículo),  decrementar las existencias de un artículo 
- * (nunca por debajo de cero, se delega en la clase Artículo), devolver un artículo (para mostrarlo). Para  listar el almacén 
- * podría devolverse una cadena con todos los artículos del almacén (toString)
- * 
- * @author Quique Ruz Del Río
- */
-public class Warehouse {
-  /**
-   * Lista donde se almacenan los articulos a añadir.
-   */
-  private List<Article> articles;
-  /**
-   * Crea un nuevo almacen vacio.
-   */
-  public Warehouse() {
-    articles = new ArrayList<Article>();
-  }
-  
-  /**
-   * Crea un nuevo almacen que se extrae de un fichero xml.
-   * @param route   Ruta del fichero xml donde se guarda el almacen.
-   */
-  
-  public Warehouse(String route) {
-    try {
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder builder = factory.newDocumentBuilder();
-    Document document = builder.parse(new File(route));
-    
-    document.getDocumentElement().normalize();
-    
-    NodeList nodes = document.getElementsByTagName("Article");
-    
-    for(int i = 0; i < nodes.getLength(); i++) {
-      // Nodo Articulo
-      Node node = nodes.item(i);
-      Element article = (Element) node;
-      
-      // Nodos de cada articulo pasados a variables
-      // int code = Integer.parseInt(article.getAttribute("Code"));
-      String name = article.getElementsByTagName("Name").item(0).getTextContent();
-      String brand = article.getElementsByTagName("Brand").item(0).getTextContent();
-      double buyingPrice = Double.parseDouble(article.getElementsByTagName("BuyingPrice").item(0).getTextContent());
-      double sellingPrice = Double.parseDouble(article.getElementsByTagName("SellingPrice").item(0).getTextContent());
-      int units = Integer.parseInt(article.getElementsByTagName("Units").item(0).getTextContent());
-      int securityStock = Integer.parseInt(article.getElementsByTagName("SecurityStock").item(0).getTextContent());
-      int maxStock = Integer.parseInt(article.getElementsByTagName("MaxStock").item(0).getTextContent());
-      
-      articles.add(new Article(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock));
-    }
-    
-    }catch (ParserConfigurationException e) {
-      e.printStackTrace();
-    } catch (SAXException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-  }
-  /**
-   * Crea un nuevo almacen a partir de un ArrayList de articulos.
-   * @param articles    Array List con los articulos del almacen.
-   */
-  Warehouse(ArrayList<Article> articles) {
-    this.articles = new ArrayList<Article>(articles);
-    
-  }
-  /**
-   * Añade un articulo al almacen, el articulo se crea internamente.
-   * @param name            Nombre del Articulo a añadir.
-   * @param brand           Marca del Articulo a añadir.
-   * @param buyingPrice     Precio de compra del Articulo a añadir.
-   * @param sellingPrice    Precio de venta del Articulo a añadir.
-   * @param units           Unidades del Articulo a añadir.
-   * @param securityStock   Stock de seguridad del Articulo a añadir.
-   * @param maxStock        Stock Maximo del Articulo a añadir.
-   * @throws WarehouseArticleRepeatedException      Si ya existe el articulo
-   */
-  public void addArticle(String name, String brand, double buyingPrice, double sellingPrice, 
-      int units, int securityStock, int maxStock) throws WarehouseArticleRepeatedException{
-    Article aux = createArticle(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
-    throwExceptionIfArticleToAddExits(aux.getCode());
-    articles.add(aux);
-  }
-  /**
-   * Añade un articulo al almacen, el articulo se crea internamente.
-   * @param name            Nombre del Articulo a añadir.
-   * @param brand           Marca del Articulo a añadir.
-   * @param buyingPrice     Precio de compra del Articulo a añadir.
-   * @param sellingPrice    Precio de venta del Articulo a añadir.
-   * @param units           Unidades del Articulo a añadir.
-   * @throws WarehouseArticleRepeatedException      Si ya existe el articulo.
-   */
-  public void addArticle(String name, String brand, double buyingPrice, double sellingPrice, int units) throws WarehouseArticleRepeatedException{
-    addArticle(name, brand, buyingPrice, sellingPrice, units, 0, 0);
-  }
-  /**
-   * Elimina un articulo del almacen.
-   * @param code    Codigo del articulo a eliminar.
-   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
-   */
-  public void deleteArticle(int code) throws WarehouseArticleNotExistsException {
-    throwExceptionIfArticleDoesNotExist(code);
-    articles.removeIf(art -> art.getCode()==code);
-  }
-  /**
-   * Incrementa las unidades de un articulo 
-   * @param code    Codigo del articulo.
-   * @param units   Unidades a incrementar.
-   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
-   */
-  public void incrementUnitsOfArticle(int code, int units) throws WarehouseArticleNotExistsException {
-    throwExceptionIfArticleDoesNotExist(code);
-    articles.get(code).increaseUnits(units);
-  }
-  /**
-   * Decrementa unidades de un articulo.
-   * @param code    Codigo del articulo.
-   * @param units   Unidades a decrementar
-   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
-   * @throws ArticleStockException                  Si el stock da error.
-   */
-  public void decreaseUnitsOfArticle(int code, int units) throws WarehouseArticleNotExistsException, ArticleStockException{
-    throwExceptionIfArticleDoesNotExist(code);
-    throwExceptionIfArticleStockAreLessThanZero(code,units);
-    articles.get(code).decreaseUnits(units);
-  }
-  /**
-   * Devuelve el articulo en cuestion.
-   * @param code    Codigo del articulo en cuestion.
-   * @return        Articulo que tiene el codigo en cuestion.
-   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
-   */
-  public Article returnArticle(int code) throws WarehouseArticleNotExistsException {
-    throwExceptionIfArticleDoesNotExist(code);
-    for (Article i : articles) {
-      if (i.getCode()==code) {
-        return articles.get(code);
-      }
-    }
-    return null;
-  }
-  
-  @Override
-  public String toString() {
-    return "Warehouse [articles=" + articles + "]";
-  }
-  /**
-   * Comprueba si el articulo a añadir existe.
-   * @param code    Codigo del articulo a añadir.
-   * @throws WarehouseArticleRepeatedException      Si el articulo existe.
-   */
-  private void throwExceptionIfArticleToAddExits(int code) throws WarehouseArticleRepeatedException {
-    for(Article i : articles) {
-      if (i.getCode()==code) {
-        throw new WarehouseArticleRepeatedException("El articulo ya existe en el almacen.");
-      }
-    }
-  }
-  /**
-   * Crea un articulo provisional.
-   * @param name            Nombre del Articulo a añadir.
-   * @param brand           Marca del Articulo a añadir.
-   * @param buyingPrice     Precio de compra del Articulo a añadir.
-   * @param sellingPrice    Precio de venta del Articulo a añadir.
-   * @param units           Unidades del Articulo a añadir.
-   * @param securityStock   Stock de seguridad del Articulo a añadir.
-   * @param maxStock        Stock Maximo del Articulo a añadir.
-   * @return
-   */
-  private Article createArticle(String name, String brand, double buyingPrice, double sellingPrice, 
-      int units, int securityStock, int maxStock) {
-    Article aux = new Article(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
-    return aux;
-  }
-  /**
-   * Modifica el articulo deseado
-   * @param code
-   * @param newName
-   * @param newBrand
-   * @param newBuyingPrice
-   * @param newSellingPrice
-   * @param newUnits
-   * @param newSecurityStock
-   * @param newMaxStock
-   * @throws WarehouseArticleNotExistsException
-   */
-  public void modifyArticle(int code, String newName, String newBrand, double newBuyingPrice, double newSellingPrice, 
-      int newUnits, int newSecurityStock, int newMaxStock) throws WarehouseArticleNotExistsException {
-    throwExceptionIfArticleDoesNotExist(code);
-    Article aux = articles.get(code);
-    aux.setName(newName);
-    aux.setBrand(newBrand);
-    aux.setBuyingPrice(newBuyingPrice);
-    aux.setSellingPrice(newSellingPrice);
-    aux.setUnits(newUnits);
-    aux.setSecurityStock(newSecurityStock);
-    aux.setMaxStock(newMaxStock);
-  }
-  
-  /**
-   * Lanza una excepción cuando el artículo no existe
-   * 
-   * @param code
-   * @throws WarehouseArticleNotExistsException
-   */
-  
-  private void throwExceptionIfArticleDoesNotExist(int code) throws WarehouseArticleNotExistsException {
-    for (Article i: articles) {
-      if(i.getCode()==code) {
-        return;
-      }
-    }
-    throw new WarehouseArticleNotExistsException("El articulo no existe");
-  }
-  
-  
-  /**
-   * Lanza una excepción cuando el stock sea menor a 0
-   * 
-   * @param code
-   * @param units
-   * @throws ArticleStockException
-   */
-  private void throwExceptionIfArticleStockAreLessThanZero(int code, int units) throws ArticleStockException {
-    if(articles.get(code).getUnits() - units < 0) {
-      throw new ArticleStockException("El stock no puede ser inferior a 0");
-    }
-  }
-  
-  /**
-   * Guarda el fichero en un XML
-   * 
-   * @param fileName    Nombre del archivo XML
-   */
-  
-  public void save(String fileName) {
-    try {
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder builder = factory.newDocumentBuilder();
-    Document document = builder.newDocument();
-    
-    Element root = document.createElement("Warehouse");
-    document.appendChild(root);
-    
-    for (Article art : articles) {
-      // Nodo Articulo
-      Element elementArt = document.createElement("Article");
-      root.appendChild(elementArt);
-      
-      //Atributo Codigo
-      Attr attrCode = document.createAttribute("Code");
-      attrCode.setValue(Integer.toString(art.getCode()));
-      elementArt.setAttributeNode(attrCode);
-      
-      // Nodo Nombre
-      Element elementName = document.createElement("Name");
-      elementName.appendChild(document.createTextNode(art.getName()));
-      elementArt.appendChild(elementName);
-      
-      // Nodo Marca
-      Element elementBrand = document.createElement("Brand");
-      elementBrand.appendChild(document.createTextNode(art.getBrand()));
-      elementArt.appendChild(elementBrand);
-      
-      // Nodo Precio de Compra
-      Element elementBuyingPrice = document.createElement("BuyingPrice");
-      elementBuyingPrice.appendChild(document.createTextNode(Double.toString(art.getBuyingPrice())));
-      elementArt.appendChild(elementBuyingPrice);
-      
-      // Nodo Precio de Venta
-      Element elementSellingPrice = document.createElement("SellingPrice");
-      elementSellingPrice.appendChild(document.createTextNode(Double.toString(art.getSellingPrice())));
-      elementArt.appendChild(elementSellingPrice);
-      
-      // Nodo Unidades
-      Element elementUnits = document.createElement("Units");
-      elementUnits.appendChild(document.createTextNode(Integer.toString(art.getUnits())));
-      elementArt.appendChild(elementUnits);
-      
-      // Nodo Stock de seguridad
-      Element elementSecurityStock = document.createElement("SecurityStock");
-      elementSecurityStock.appendChild(document.createTextNode(Integer.toString(art.getSecurityStock())));
-      elementArt.appendChild(elementSecurityStock);
-      
-      // Nodo Stock Máximo
-      Element elementMaxStock = document.createElement("MaxStock");
-      elementMaxStock.appendChild(document.createTextNode(Integer.toString(art.getMaxStock())));
-      elementArt.appendChild(elementMaxStock);
-    }
-    
-    TransformerFactory tf = TransformerFactory.newInstance();
-    Transformer transformer = tf.newTransformer();
-    DOMSource source = new DOMSource(document);
-    StreamResult result = new StreamResult(new FileWriter("Warehouse.xml"));
-    transformer.transform(source, result);
-    } catch (DOMException e) {
-    } catch (TransformerConfigurationException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (TransformerException e) {
-      e.printStackTrace();
-    } catch (ParserConfigurationException e) {
-      e.printStackTrace();
-    }
-  }
-}
+package gestisimal.classes;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import gestisimal.exceptions.ArticleIllegalArgumentException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+import gestisimal.exceptions.ArticleStockException;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehousePersistenceException;
+import gestisimal.monitoring.ArticleModifiedEvent;
+import gestisimal.monitoring.StockRejectedEvent;
+import gestisimal.monitoring.WarehouseMetrics;
+import gestisimal.monitoring.WarehouseOperation;
+
+
+/**
+ * Clase Almacén que realice el alta, baja, modificación, entrada de mercancía (incrementa unidades), salida de mercancía (decrementa unidades).
+ * El estado será un ArrayList de artículos (pero la clase no será un ArrayList)
+ * Su comportamiento será: añadir artículos (no puede haber dos artículos con el mismo nombre y marca), eliminar artículos, 
+ * incrementar las existencias de un artículo (se delega en la clase Artículo),  decrementar las existencias de un artículo 
+ * (nunca por debajo de cero, se delega en la clase Artículo), devolver un artículo (para mostrarlo). Para  listar el almacén 
+ * podría devolverse una cadena con todos los artículos del almacén (toString)
+ * 
+ * @author Quique Ruz Del Río
+ */
+public class Warehouse {
+  /**
+   * Numero de cerrojos de unidades, potencia de dos.
+   */
+  private static final int UNITS_LOCKS = 256;
+  /**
+   * Indice principal de los articulos del almacen, indexados por su codigo.
+   * Mantiene el orden de insercion para listar y guardar el almacen.
+   */
+  private Map<Integer, Article> articles;
+  /**
+   * Indice unico secundario de los articulos por nombre y marca.
+   */
+  private Map<String, Article> articlesByNameAndBrand;
+  /**
+   * Indice de los articulos ordenados por codigo, para listar por paginas sin recorrer las anteriores.
+   */
+  private NavigableMap<Integer, Article> articlesByCode;
+  /**
+   * Articulos cuyas unidades estan en su stock de seguridad o por debajo, indexados por su codigo.
+   * Se actualiza con cada cambio de un articulo, asi que consultarlo no exige recorrer el almacen.
+   */
+  private Map<Integer, Article> atOrBelowSecurityStock;
+  /**
+   * Cerrojo de las operaciones que cambian el catalogo (alta, baja y modificacion).
+   * Las entradas y salidas de mercancia no lo usan, usan el cerrojo de unidades y el monitor de cada articulo.
+   */
+  private final Object catalogLock = new Object();
+  /**
+   * Repartidor de los codigos de los articulos nuevos.
+   */
+  private final ArticleCodeAllocator codeAllocator;
+  /**
+   * Observadores que reciben los cambios del almacen.
+   */
+  private volatile WarehouseListener[] listeners = new WarehouseListener[0];
+  /**
+   * Vistas abiertas con {@link #openSnapshot()}, que guardan como estaban los articulos que cambian.
+   */
+  private volatile WarehouseSnapshot[] snapshots = new WarehouseSnapshot[0];
+  /**
+   * Version del almacen, aumenta cada vez que se abre una vista. Se cambia con catalogLock.
+   */
+  private long version;
+  /**
+   * Impide abrir una vista mientras se aplica un lote de movimientos, para que la vista no vea
+   * solo una parte del lote.
+   */
+  private final ReadWriteLock snapshotGate = new ReentrantReadWriteLock();
+  /**
+   * Cerrojos de las unidades de los articulos, repartidos por codigo. Quien cambia unidades toma
+   * el del articulo antes que su monitor, asi un lote puede bloquear muchos articulos tomando
+   * como mucho {@link #UNITS_LOCKS} cerrojos en orden, sin anidar un monitor por articulo.
+   */
+  private final ReentrantLock[] unitsLocks = new ReentrantLock[UNITS_LOCKS];
+  /**
+   * Metricas de las operaciones publicas del almacen.
+   */
+  private final WarehouseMetrics metrics = new WarehouseMetrics();
+  /**
+   * Metricas de las cargas desde fichero, comunes a todos los almacenes. Una carga que falla no
+   * llega a devolver el almacen, asi que no se podria consultar en sus metricas.
+   */
+  private static final WarehouseMetrics LOAD_METRICS = new WarehouseMetrics();
+  /**
+   * Si el almacen admite accesos desde varios hilos.
+   */
+  private final boolean concurrent;
+  /**
+   * Crea un nuevo almacen vacio.
+   */
+  public Warehouse() {
+    this(false);
+  }
+  
+  /**
+   * Crea un nuevo almacen vacio.
+   * En modo concurrente los indices admiten accesos desde varios hilos y las entradas y salidas 
+   * de mercancia de articulos distintos no compiten entre si, aunque el listado deja de seguir
+   * el orden de insercion.
+   * @param concurrent    Si el almacen se va a usar desde varios hilos.
+   */
+  public Warehouse(boolean concurrent) {
+    this(concurrent, new BlockArticleCodeAllocator());
+  }
+  
+  /**
+   * Crea un nuevo almacen vacio que reparte los codigos con el repartidor indicado.
+   * Compartir el repartidor entre almacenes evita que sus codigos coincidan.
+   * @param concurrent      Si el almacen se va a usar desde varios hilos.
+   * @param codeAllocator   Repartidor de codigos de articulo.
+   */
+  public Warehouse(boolean concurrent, ArticleCodeAllocator codeAllocator) {
+    this.codeAllocator = codeAllocator;
+    this.concurrent = concurrent;
+    for (int i = 0; i < UNITS_LOCKS; i++) {
+      unitsLocks[i] = new ReentrantLock();
+    }
+    if (concurrent) {
+      articles = new ConcurrentHashMap<Integer, Article>();
+      articlesByNameAndBrand = new ConcurrentHashMap<String, Article>();
+      articlesByCode = new ConcurrentSkipListMap<Integer, Article>();
+      atOrBelowSecurityStock = new ConcurrentHashMap<Integer, Article>();
+    } else {
+      articles = new LinkedHashMap<Integer, Article>();
+      articlesByNameAndBrand = new HashMap<String, Article>();
+      articlesByCode = new TreeMap<Integer, Article>();
+      atOrBelowSecurityStock = new LinkedHashMap<Integer, Article>();
+    }
+  }
+  
+  /**
+   * Crea un nuevo almacen que se extrae de un fichero xml.
+   * @param route   Ruta del fichero xml donde se guarda el almacen.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o su contenido no es valido.
+   */
+  
+  public Warehouse(String route) throws WarehousePersistenceException {
+    this(route, false);
+  }
+  
+  /**
+   * Crea un nuevo almacen que se extrae de un fichero xml.
+   * @param route         Ruta del fichero xml donde se guarda el almacen.
+   * @param concurrent    Si el almacen se va a usar desde varios hilos.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o su contenido no es valido.
+   */
+  
+  public Warehouse(String route, boolean concurrent) throws WarehousePersistenceException {
+    this(concurrent);
+    long start = LOAD_METRICS.start();
+    try {
+      WarehouseXmlReader.read(route, this);
+    } catch (WarehousePersistenceException | RuntimeException e) {
+      LOAD_METRICS.failed(WarehouseOperation.LOAD, start, e.getClass());
+      throw e;
+    }
+    LOAD_METRICS.succeeded(WarehouseOperation.LOAD, start);
+  }
+  /**
+   * Crea un nuevo almacen a partir de un ArrayList de articulos.
+   * @param articles    Array List con los articulos del almacen.
+   */
+  Warehouse(ArrayList<Article> articles) {
+    this();
+    for (Article art : articles) {
+      advanceCodesPast(art.getCode());
+      indexArticle(art);
+    }
+  }
+  /**
+   * Añade un articulo al almacen, el articulo se crea internamente.
+   * @param name            Nombre del Articulo a añadir.
+   * @param brand           Marca del Articulo a añadir.
+   * @param buyingPrice     Precio de compra del Articulo a añadir.
+   * @param sellingPrice    Precio de venta del Articulo a añadir.
+   * @param units           Unidades del Articulo a añadir.
+   * @param securityStock   Stock de seguridad del Articulo a añadir.
+   * @param maxStock        Stock Maximo del Articulo a añadir.
+   * @return                Codigo asignado al articulo.
+   * @throws WarehouseArticleRepeatedException      Si ya existe el articulo
+   */
+  public int addArticle(String name, String brand, double buyingPrice, double sellingPrice, 
+      int units, int securityStock, int maxStock) throws WarehouseArticleRepeatedException{
+    long start = metrics.start();
+    int code;
+    try {
+      code = add(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
+    } catch (WarehouseArticleRepeatedException | RuntimeException e) {
+      metrics.failed(WarehouseOperation.ADD, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.ADD, start);
+    return code;
+  }
+  
+  private int add(String name, String brand, double buyingPrice, double sellingPrice, 
+      int units, int securityStock, int maxStock) throws WarehouseArticleRepeatedException{
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      Article aux;
+      synchronized (catalogLock) {
+        throwExceptionIfArticleToAddExits(name, brand);
+        aux = createArticle(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
+        indexArticle(aux);
+        for (WarehouseListener listener : listeners) {
+          listener.articleAdded(aux);
+        }
+      }
+      return aux.getCode();
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  /**
+   * Añade un articulo al almacen, el articulo se crea internamente.
+   * @param name            Nombre del Articulo a añadir.
+   * @param brand           Marca del Articulo a añadir.
+   * @param buyingPrice     Precio de compra del Articulo a añadir.
+   * @param sellingPrice    Precio de venta del Articulo a añadir.
+   * @param units           Unidades del Articulo a añadir.
+   * @return                Codigo asignado al articulo.
+   * @throws WarehouseArticleRepeatedException      Si ya existe el articulo.
+   */
+  public int addArticle(String name, String brand, double buyingPrice, double sellingPrice, int units) throws WarehouseArticleRepeatedException{
+    return addArticle(name, brand, buyingPrice, sellingPrice, units, 0, 0);
+  }
+  /**
+   * Elimina un articulo del almacen.
+   * @param code    Codigo del articulo a eliminar.
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   */
+  public void deleteArticle(int code) throws WarehouseArticleNotExistsException {
+    long start = metrics.start();
+    try {
+      delete(code);
+    } catch (WarehouseArticleNotExistsException | RuntimeException e) {
+      metrics.failed(WarehouseOperation.DELETE, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.DELETE, start);
+  }
+  
+  private void delete(int code) throws WarehouseArticleNotExistsException {
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      synchronized (catalogLock) {
+        Article aux = getArticle(code);
+        // Con el cerrojo de unidades ninguna entrada o salida puede cambiar el articulo mientras se
+        // quita, y las que lo esperan ven que ya no esta en el almacen
+        ReentrantLock lock = unitsLock(aux);
+        lock.lock();
+        try {
+          synchronized (aux) {
+            articleWillChange(aux);
+            articles.remove(code);
+            articlesByCode.remove(code);
+            articlesByNameAndBrand.remove(nameAndBrandKey(aux.getName(), aux.getBrand()), aux);
+            aux.setWarehouse(null);
+            atOrBelowSecurityStock.remove(code);
+            for (WarehouseListener listener : listeners) {
+              listener.articleDeleted(aux);
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  /**
+   * Incrementa las unidades de un articulo 
+   * @param code    Codigo del articulo.
+   * @param units   Unidades a incrementar.
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   */
+  public void incrementUnitsOfArticle(int code, int units) throws WarehouseArticleNotExistsException {
+    throwExceptionIfMovementFailed(tryIncrementUnitsOfArticle(code, units));
+  }
+  /**
+   * Incrementa las unidades de un articulo sin lanzar excepciones ni crear objetos.
+   * @param code    Codigo del articulo.
+   * @param units   Unidades a incrementar.
+   * @return        {@link MovementStatus#OK} si se ha incrementado, o el motivo por el que no.
+   */
+  public MovementStatus tryIncrementUnitsOfArticle(int code, int units) {
+    long start = metrics.start();
+    MovementStatus status;
+    try {
+      status = incrementUnits(code, units);
+    } catch (RuntimeException e) {
+      metrics.failed(WarehouseOperation.INCREMENT, start, e.getClass());
+      throw e;
+    }
+    recordMovement(WarehouseOperation.INCREMENT, start, status);
+    return status;
+  }
+  
+  private MovementStatus incrementUnits(int code, int units) {
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      if (units < 0) {
+        return MovementStatus.INVALID_UNITS;
+      }
+      Article aux = articles.get(code);
+      if (aux == null) {
+        return MovementStatus.ARTICLE_NOT_FOUND;
+      }
+      ReentrantLock lock = unitsLock(aux);
+      lock.lock();
+      try {
+        synchronized (aux) {
+          if (articles.get(code) != aux) {
+            return MovementStatus.ARTICLE_NOT_FOUND;
+          }
+          if (aux.getUnits() > Integer.MAX_VALUE - units) {
+            return MovementStatus.TOO_MANY_UNITS;
+          }
+          aux.increaseUnits(units);
+          fireUnitsChanged(aux, units);
+        }
+      } finally {
+        lock.unlock();
+      }
+      return MovementStatus.OK;
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  /**
+   * Decrementa unidades de un articulo.
+   * @param code    Codigo del articulo.
+   * @param units   Unidades a decrementar
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   * @throws ArticleStockException                  Si no hay unidades suficientes.
+   */
+  public void decreaseUnitsOfArticle(int code, int units) throws WarehouseArticleNotExistsException, ArticleStockException{
+    MovementStatus status = tryDecreaseUnitsOfArticle(code, units);
+    if (status == MovementStatus.INSUFFICIENT_STOCK) {
+      throw new ArticleStockException("El stock no puede ser inferior a 0", false);
+    }
+    throwExceptionIfMovementFailed(status);
+  }
+  /**
+   * Decrementa las unidades de un articulo sin lanzar excepciones ni crear objetos. Una salida
+   * rechazada por falta de unidades es un resultado normal y no cuesta mas que una aceptada.
+   * @param code    Codigo del articulo.
+   * @param units   Unidades a decrementar.
+   * @return        {@link MovementStatus#OK} si se ha decrementado, o el motivo por el que no.
+   */
+  public MovementStatus tryDecreaseUnitsOfArticle(int code, int units) {
+    long start = metrics.start();
+    MovementStatus status;
+    try {
+      status = decreaseUnits(code, units);
+    } catch (RuntimeException e) {
+      metrics.failed(WarehouseOperation.DECREMENT, start, e.getClass());
+      throw e;
+    }
+    recordMovement(WarehouseOperation.DECREMENT, start, status);
+    return status;
+  }
+  
+  private MovementStatus decreaseUnits(int code, int units) {
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      if (units < 0) {
+        return rejectDecrease(code, units, -1, MovementStatus.INVALID_UNITS);
+      }
+      Article aux = articles.get(code);
+      if (aux == null) {
+        return rejectDecrease(code, units, -1, MovementStatus.ARTICLE_NOT_FOUND);
+      }
+      ReentrantLock lock = unitsLock(aux);
+      lock.lock();
+      try {
+        synchronized (aux) {
+          if (articles.get(code) != aux) {
+            return rejectDecrease(code, units, -1, MovementStatus.ARTICLE_NOT_FOUND);
+          }
+          if (!aux.decreaseUnitsIfAvailable(units)) {
+            return rejectDecrease(code, units, aux.getUnits(), MovementStatus.INSUFFICIENT_STOCK);
+          }
+          fireUnitsChanged(aux, -units);
+        }
+      } finally {
+        lock.unlock();
+      }
+      return MovementStatus.OK;
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  /**
+   * Registra el evento de Java Flight Recorder de una salida rechazada si se esta grabando.
+   * @param code        Codigo del articulo.
+   * @param units       Unidades pedidas.
+   * @param available   Unidades del articulo, o -1 si no existe.
+   * @param status      Motivo del rechazo.
+   * @return            El mismo motivo del rechazo.
+   */
+  private static MovementStatus rejectDecrease(int code, int units, int available, MovementStatus status) {
+    StockRejectedEvent event = new StockRejectedEvent();
+    if (event.shouldCommit()) {
+      event.articleCode = code;
+      event.requestedUnits = units;
+      event.availableUnits = available;
+      event.reason = status.name();
+      event.commit();
+    }
+    return status;
+  }
+  /**
+   * Cambia los precios de compra y venta de un articulo sin lanzar excepciones ni crear objetos.
+   * @param code            Codigo del articulo.
+   * @param buyingPrice     Nuevo precio de compra.
+   * @param sellingPrice    Nuevo precio de venta.
+   * @return                {@link MovementStatus#OK} si se han cambiado, o el motivo por el que no.
+   */
+  public MovementStatus tryChangePricesOfArticle(int code, double buyingPrice, double sellingPrice) {
+    long start = metrics.start();
+    MovementStatus status;
+    try {
+      status = changePrices(code, buyingPrice, sellingPrice);
+    } catch (RuntimeException e) {
+      metrics.failed(WarehouseOperation.MODIFY, start, e.getClass());
+      throw e;
+    }
+    recordMovement(WarehouseOperation.MODIFY, start, status);
+    return status;
+  }
+
+  private MovementStatus changePrices(int code, double buyingPrice, double sellingPrice) {
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      if (!(buyingPrice >= 0) || !(sellingPrice >= 0)) {
+        return MovementStatus.INVALID_PRICE;
+      }
+      synchronized (catalogLock) {
+        Article aux = articles.get(code);
+        if (aux == null) {
+          return MovementStatus.ARTICLE_NOT_FOUND;
+        }
+        synchronized (aux) {
+          aux.setBuyingPrice(buyingPrice);
+          aux.setSellingPrice(sellingPrice);
+          for (WarehouseListener listener : listeners) {
+            listener.articleModified(aux);
+          }
+        }
+      }
+      return MovementStatus.OK;
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  /**
+   * Aplica un lote de entradas y salidas de mercancia, todas o ninguna. Primero se buscan todos los
+   * articulos y se comprueban todas las lineas en una sola pasada, con los articulos implicados
+   * bloqueados, y solo si todas son validas se aplican. Las lineas de un mismo articulo se
+   * comprueban en orden, acumulando su efecto. Las lineas rechazadas no lanzan excepciones: se
+   * informan en el resultado.
+   * @param movements   Lineas del lote.
+   * @return            Resultado con el estado de cada linea.
+   */
+  public MovementBatchResult applyMovements(List<StockMovement> movements) {
+    long start = metrics.start();
+    MovementBatchResult result;
+    try {
+      result = applyMovementsUnmetered(movements);
+    } catch (RuntimeException e) {
+      metrics.failed(WarehouseOperation.BATCH, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.BATCH, start);
+    return result;
+  }
+  
+  private MovementBatchResult applyMovementsUnmetered(List<StockMovement> movements) {
+    int size = movements.size();
+    MovementStatus[] statuses = new MovementStatus[size];
+    Article[] lineArticles = new Article[size];
+    Map<Article, int[]> balances = new IdentityHashMap<Article, int[]>();
+    int rejected = 0;
+    for (int i = 0; i < size; i++) {
+      StockMovement movement = movements.get(i);
+      Article aux = articles.get(movement.getCode());
+      if (movement.getUnits() < 0) {
+        statuses[i] = MovementStatus.INVALID_UNITS;
+        rejected++;
+      } else if (aux == null) {
+        statuses[i] = MovementStatus.ARTICLE_NOT_FOUND;
+        rejected++;
+      } else {
+        statuses[i] = MovementStatus.OK;
+        lineArticles[i] = aux;
+        balances.putIfAbsent(aux, new int[2]);
+      }
+    }
+    // Cada articulo del lote da como mucho un aviso de unidades
+    WarehouseListener[] notified = fireBeforeChange(balances.size());
+    try {
+      // Se bloquean siempre en orden para no interbloquearse con otros lotes
+      boolean[] stripes = new boolean[UNITS_LOCKS];
+      for (Article article : balances.keySet()) {
+        stripes[article.getCode() & (UNITS_LOCKS - 1)] = true;
+      }
+      snapshotGate.readLock().lock();
+      int held = 0;
+      try {
+        for (; held < UNITS_LOCKS; held++) {
+          if (stripes[held]) {
+            unitsLocks[held].lock();
+          }
+        }
+        rejected += applyMovementsLocked(movements, lineArticles, balances, statuses, rejected == 0);
+      } finally {
+        while (held-- > 0) {
+          if (stripes[held]) {
+            unitsLocks[held].unlock();
+          }
+        }
+        snapshotGate.readLock().unlock();
+      }
+      return new MovementBatchResult(statuses, rejected);
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  
+  /**
+   * Comprueba y aplica el lote con los cerrojos de unidades de todos sus articulos tomados.
+   * @param movements       Lineas del lote.
+   * @param lineArticles    Articulo de cada linea.
+   * @param balances        Unidades resultantes y variacion neta de cada articulo.
+   * @param statuses        Estado de cada linea.
+   * @param apply           Si se aplica el lote cuando todas las lineas son validas.
+   * @return                Numero de lineas rechazadas por falta de unidades, por exceso o porque
+   *                        el articulo se ha dado de baja.
+   */
+  private int applyMovementsLocked(List<StockMovement> movements, Article[] lineArticles, 
+      Map<Article, int[]> balances, MovementStatus[] statuses, boolean apply) {
+    for (Map.Entry<Article, int[]> entry : balances.entrySet()) {
+      entry.getValue()[0] = entry.getKey().getUnits();
+    }
+    int rejected = 0;
+    for (int i = 0; i < lineArticles.length; i++) {
+      if (lineArticles[i] == null) {
+        continue;
+      }
+      if (articles.get(lineArticles[i].getCode()) != lineArticles[i]) {
+        // Se ha dado de baja antes de bloquearlo
+        statuses[i] = MovementStatus.ARTICLE_NOT_FOUND;
+        rejected++;
+        continue;
+      }
+      int[] balance = balances.get(lineArticles[i]);
+      int delta = movements.get(i).delta();
+      long units = (long) balance[0] + delta;
+      if (units < 0) {
+        statuses[i] = MovementStatus.INSUFFICIENT_STOCK;
+        rejected++;
+      } else if (units > Integer.MAX_VALUE) {
+        statuses[i] = MovementStatus.TOO_MANY_UNITS;
+        rejected++;
+      } else {
+        balance[0] = (int) units;
+        balance[1] += delta;
+      }
+    }
+    if (apply && rejected == 0) {
+      for (Map.Entry<Article, int[]> entry : balances.entrySet()) {
+        int[] balance = entry.getValue();
+        if (balance[1] != 0) {
+          synchronized (entry.getKey()) {
+            entry.getKey().setUnits(balance[0]);
+            fireUnitsChanged(entry.getKey(), balance[1]);
+          }
+        }
+      }
+    }
+    return rejected;
+  }
+  
+  /**
+   * Devuelve el articulo en cuestion.
+   * @param code    Codigo del articulo en cuestion.
+   * @return        Articulo que tiene el codigo en cuestion.
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   */
+  public Article returnArticle(int code) throws WarehouseArticleNotExistsException {
+    long start = metrics.start();
+    Article aux;
+    try {
+      aux = getArticle(code);
+    } catch (WarehouseArticleNotExistsException e) {
+      metrics.failed(WarehouseOperation.RETURN, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.RETURN, start);
+    return aux;
+  }
+  
+  /**
+   * Devuelve los articulos cuyas unidades estan por debajo de su stock de seguridad.
+   * No recorre el almacen: el coste depende solo de cuantos estan en su stock de seguridad o por debajo.
+   * @return    Lista con los articulos bajo el stock de seguridad.
+   */
+  public List<Article> articlesBelowSecurityStock() {
+    List<Article> below = new ArrayList<Article>();
+    for (Article article : atOrBelowSecurityStock.values()) {
+      if (article.getUnits() < article.getSecurityStock()) {
+        below.add(article);
+      }
+    }
+    return below;
+  }
+  
+  @Override
+  public String toString() {
+    return "Warehouse [articles=" + articles.values() + "]";
+  }
+  
+  /**
+   * Devuelve un iterador de solo lectura sobre los articulos del almacen, para recorrerlo sin
+   * copiarlo. En modo concurrente refleja los cambios que se hagan mientras se recorre.
+   * @return    Iterador de los articulos.
+   */
+  public Iterator<Article> articleIterator() {
+    return Collections.unmodifiableCollection(articles.values()).iterator();
+  }
+  
+  /**
+   * Devuelve una pagina del listado del almacen ordenado por codigo. La pagina empieza despues del
+   * ultimo articulo de la anterior, asi que pedir cualquier pagina cuesta lo mismo y las altas y
+   * bajas entre una pagina y otra no hacen que se salten ni se repitan articulos.
+   * @param afterCode   Codigo del ultimo articulo de la pagina anterior, o -1 para la primera.
+   * @param pageSize    Numero maximo de articulos de la pagina.
+   * @return            Articulos de la pagina, vacia si no hay mas.
+   */
+  public List<Article> listArticlesAfter(int afterCode, int pageSize) {
+    throwExceptionIfPageIsNotValid(afterCode, pageSize);
+    List<Article> page = new ArrayList<Article>(Math.min(pageSize, articles.size()));
+    Iterator<Article> it = articlesByCode.tailMap(afterCode, false).values().iterator();
+    while (page.size() < pageSize && it.hasNext()) {
+      page.add(it.next());
+    }
+    return page;
+  }
+  
+  /**
+   * Escribe el listado del almacen, un articulo por linea, directamente en el destino. A diferencia
+   * de {@link #toString()} no construye una cadena con todo el almacen.
+   * @param out     Destino del listado, por ejemplo un Writer o System.out.
+   * @throws IOException    Si falla la escritura.
+   */
+  public void writeTo(Appendable out) throws IOException {
+    Iterator<Article> it = articleIterator();
+    while (it.hasNext()) {
+      it.next().appendTo(out);
+      out.append(System.lineSeparator());
+    }
+  }
+  
+  /**
+   * Escribe una pagina del listado del almacen ordenado por codigo, un articulo por linea,
+   * directamente en el destino. Las paginas se piden igual que con {@link #listArticlesAfter(int, int)}.
+   * @param out         Destino del listado.
+   * @param afterCode   Codigo del ultimo articulo de la pagina anterior, o -1 para la primera.
+   * @param pageSize    Numero maximo de articulos de la pagina.
+   * @return            Codigo del ultimo articulo escrito, para pedir la pagina siguiente, o -1 si no quedaban articulos.
+   * @throws IOException    Si falla la escritura.
+   */
+  public int writeArticlesAfter(Appendable out, int afterCode, int pageSize) throws IOException {
+    throwExceptionIfPageIsNotValid(afterCode, pageSize);
+    Iterator<Article> it = articlesByCode.tailMap(afterCode, false).values().iterator();
+    int last = -1;
+    for (int i = 0; i < pageSize && it.hasNext(); i++) {
+      Article aux = it.next();
+      aux.appendTo(out);
+      out.append(System.lineSeparator());
+      last = aux.getCode();
+    }
+    return last;
+  }
+  
+  /**
+   * Comprueba los datos de una pagina del listado.
+   * @param afterCode   Codigo del ultimo articulo de la pagina anterior, o -1 para la primera.
+   * @param pageSize    Numero maximo de articulos de la pagina.
+   */
+  private static void throwExceptionIfPageIsNotValid(int afterCode, int pageSize) {
+    if (afterCode < -1 || pageSize < 0) {
+      throw new IllegalArgumentException("El codigo de partida no puede ser menor que -1 ni el tamaño de pagina negativo");
+    }
+  }
+  /**
+   * Comprueba si el articulo a añadir existe, es decir, si ya hay uno con el mismo nombre y marca.
+   * @param name    Nombre del articulo a añadir.
+   * @param brand   Marca del articulo a añadir.
+   * @throws WarehouseArticleRepeatedException      Si el articulo existe.
+   */
+  private void throwExceptionIfArticleToAddExits(String name, String brand) throws WarehouseArticleRepeatedException {
+    if (articlesByNameAndBrand.containsKey(nameAndBrandKey(name, brand))) {
+      throw new WarehouseArticleRepeatedException("El articulo ya existe en el almacen.", false);
+    }
+  }
+  /**
+   * Añade el articulo a los indices del almacen. Si ya hay uno con el mismo codigo o con el mismo
+   * nombre y marca no se añade.
+   * @param article   Articulo a indexar.
+   * @return          Si se ha añadido el articulo.
+   */
+  private boolean indexArticle(Article article) {
+    if (!articles.containsKey(article.getCode()) && articlesByNameAndBrand.putIfAbsent(nameAndBrandKey(article.getName(), article.getBrand()), article) == null) {
+      article.setAddedVersion(version);
+      articles.put(article.getCode(), article);
+      articlesByCode.put(article.getCode(), article);
+      article.setWarehouse(this);
+      updateSecurityStockIndex(article);
+      return true;
+    }
+    return false;
+  }
+  /**
+   * Añade al almacen un articulo leido de un fichero respetando su codigo.
+   * @param code            Codigo guardado del articulo o negativo para asignarle uno nuevo.
+   * @param name            Nombre del Articulo.
+   * @param brand           Marca del Articulo.
+   * @param buyingPrice     Precio de compra del Articulo.
+   * @param sellingPrice    Precio de venta del Articulo.
+   * @param units           Unidades del Articulo.
+   * @param securityStock   Stock de seguridad del Articulo.
+   * @param maxStock        Stock Maximo del Articulo.
+   * @return                Si se ha añadido, es decir, si no habia otro con el mismo codigo o el mismo nombre y marca.
+   */
+  boolean restoreArticle(int code, String name, String brand, double buyingPrice, double sellingPrice, 
+      int units, int securityStock, int maxStock) {
+    synchronized (catalogLock) {
+      if (code < 0) {
+        return indexArticle(createArticle(name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock));
+      }
+      advanceCodesPast(code);
+      return indexArticle(new Article(code, name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock));
+    }
+  }
+  /**
+   * Evita que se repartan codigos menores que el indicado, por ejemplo los ya guardados en un fichero.
+   * @param code    Primer codigo que se puede repartir.
+   */
+  void advanceCodesTo(int code) {
+    codeAllocator.advanceTo(code);
+  }
+  /**
+   * Evita que se repartan el codigo indicado y los menores.
+   * @param code    Codigo ya usado.
+   */
+  private void advanceCodesPast(int code) {
+    // Integer.MAX_VALUE no se reparte nunca: avanzar hasta el marca que no quedan codigos
+    codeAllocator.advanceTo(code == Integer.MAX_VALUE ? code : code + 1);
+  }
+  /**
+   * Devuelve la clave del indice por nombre y marca.
+   * @param name    Nombre del articulo.
+   * @param brand   Marca del articulo.
+   * @return        Clave que identifica al articulo igual que {@link Article#equals(Object)}.
+   */
+  static String nameAndBrandKey(String name, String brand) {
+    return name + '\u0000' + brand;
+  }
+  /**
+   * Crea un articulo provisional.
+   * @param name            Nombre del Articulo a añadir.
+   * @param brand           Marca del Articulo a añadir.
+   * @param buyingPrice     Precio de compra del Articulo a añadir.
+   * @param sellingPrice    Precio de venta del Articulo a añadir.
+   * @param units           Unidades del Articulo a añadir.
+   * @param securityStock   Stock de seguridad del Articulo a añadir.
+   * @param maxStock        Stock Maximo del Articulo a añadir.
+   * @return
+   */
+  private Article createArticle(String name, String brand, double buyingPrice, double sellingPrice, 
+      int units, int securityStock, int maxStock) {
+    Article aux = new Article(codeAllocator.nextCode(), name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
+    return aux;
+  }
+  /**
+   * Modifica el articulo deseado
+   * @param code
+   * @param newName
+   * @param newBrand
+   * @param newBuyingPrice
+   * @param newSellingPrice
+   * @param newUnits
+   * @param newSecurityStock
+   * @param newMaxStock
+   * @throws WarehouseArticleNotExistsException
+   * @throws WarehouseArticleRepeatedException      Si ya existe otro articulo con el nuevo nombre y marca.
+   */
+  public void modifyArticle(int code, String newName, String newBrand, double newBuyingPrice, double newSellingPrice, 
+      int newUnits, int newSecurityStock, int newMaxStock) throws WarehouseArticleNotExistsException, WarehouseArticleRepeatedException {
+    long start = metrics.start();
+    ArticleModifiedEvent event = new ArticleModifiedEvent();
+    event.begin();
+    boolean succeeded = false;
+    try {
+      modify(code, newName, newBrand, newBuyingPrice, newSellingPrice, newUnits, newSecurityStock, newMaxStock);
+      succeeded = true;
+    } catch (WarehouseArticleNotExistsException | WarehouseArticleRepeatedException | RuntimeException e) {
+      metrics.failed(WarehouseOperation.MODIFY, start, e.getClass());
+      throw e;
+    } finally {
+      if (event.shouldCommit()) {
+        event.articleCode = code;
+        event.articleCount = articles.size();
+        event.succeeded = succeeded;
+        event.commit();
+      }
+    }
+    metrics.succeeded(WarehouseOperation.MODIFY, start);
+  }
+  
+  private void modify(int code, String newName, String newBrand, double newBuyingPrice, double newSellingPrice, 
+      int newUnits, int newSecurityStock, int newMaxStock) throws WarehouseArticleNotExistsException, WarehouseArticleRepeatedException {
+    WarehouseListener[] notified = fireBeforeChange(1);
+    try {
+      synchronized (catalogLock) {
+        Article aux = getArticle(code);
+        // Todo se comprueba antes de cambiar nada: el indice solo recibe la clave nueva ya comprobada
+        aux.throwExceptionIfModificationIsNotValid(newName, newBrand, newBuyingPrice, newSellingPrice, newUnits);
+        String oldKey = nameAndBrandKey(aux.getName(), aux.getBrand());
+        String newKey = nameAndBrandKey(newName, newBrand);
+        boolean renamed = !oldKey.equals(newKey);
+        if (renamed) {
+          throwExceptionIfArticleToAddExits(newName, newBrand);
+        }
+        ReentrantLock lock = unitsLock(aux);
+        lock.lock();
+        try {
+          synchronized (aux) {
+            try {
+              aux.setName(newName);
+              aux.setBrand(newBrand);
+              if (renamed) {
+                articlesByNameAndBrand.remove(oldKey, aux);
+                articlesByNameAndBrand.put(newKey, aux);
+              }
+              aux.setBuyingPrice(newBuyingPrice);
+              aux.setSellingPrice(newSellingPrice);
+              aux.setUnits(newUnits);
+              aux.setSecurityStock(newSecurityStock);
+              aux.setMaxStock(newMaxStock);
+            } finally {
+              // Si falla algo inesperado el articulo queda modificado a medias y tambien hay que avisarlo
+              for (WarehouseListener listener : listeners) {
+                listener.articleModified(aux);
+              }
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    } finally {
+      fireCommitted(notified);
+    }
+  }
+  
+  /**
+   * Aplica un articulo leido del diario tal cual, creandolo o sobrescribiendo el que tenga su codigo.
+   * No avisa a los observadores.
+   * @param code            Codigo del articulo.
+   * @param name            Nombre del Articulo.
+   * @param brand           Marca del Articulo.
+   * @param buyingPrice     Precio de compra del Articulo.
+   * @param sellingPrice    Precio de venta del Articulo.
+   * @param units           Unidades del Articulo.
+   * @param securityStock   Stock de seguridad del Articulo.
+   * @param maxStock        Stock Maximo del Articulo.
+   */
+  void replayArticle(int code, String name, String brand, double buyingPrice, double sellingPrice, 
+      int units, int securityStock, int maxStock) {
+    synchronized (catalogLock) {
+      advanceCodesPast(code);
+      Article aux = articles.get(code);
+      if (aux == null) {
+        aux = new Article(code, name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock);
+        aux.setAddedVersion(version);
+        articles.put(code, aux);
+        articlesByCode.put(code, aux);
+        aux.setWarehouse(this);
+        updateSecurityStockIndex(aux);
+      } else {
+        synchronized (aux) {
+          articlesByNameAndBrand.remove(nameAndBrandKey(aux.getName(), aux.getBrand()), aux);
+          aux.setName(name);
+          aux.setBrand(brand);
+          aux.setBuyingPrice(buyingPrice);
+          aux.setSellingPrice(sellingPrice);
+          aux.setUnits(units);
+          aux.setSecurityStock(securityStock);
+          aux.setMaxStock(maxStock);
+        }
+      }
+      articlesByNameAndBrand.put(nameAndBrandKey(name, brand), aux);
+    }
+  }
+  
+  /**
+   * Aplica una baja leida del diario. No avisa a los observadores.
+   * @param code    Codigo del articulo.
+   */
+  void replayDelete(int code) {
+    synchronized (catalogLock) {
+      Article aux = articles.get(code);
+      if (aux != null) {
+        synchronized (aux) {
+          articleWillChange(aux);
+        }
+        articles.remove(code);
+        articlesByCode.remove(code);
+        articlesByNameAndBrand.remove(nameAndBrandKey(aux.getName(), aux.getBrand()), aux);
+        aux.setWarehouse(null);
+        atOrBelowSecurityStock.remove(code);
+      }
+    }
+  }
+  
+  /**
+   * Aplica las unidades leidas del diario. No avisa a los observadores.
+   * @param code    Codigo del articulo.
+   * @param units   Unidades que tenia el articulo tras el movimiento.
+   */
+  void replayUnits(int code, int units) {
+    Article aux = articles.get(code);
+    if (aux != null) {
+      aux.setUnits(units);
+    }
+  }
+  
+  /**
+   * Añade un observador de los cambios del almacen.
+   * @param listener    Observador.
+   */
+  void addListener(WarehouseListener listener) {
+    synchronized (catalogLock) {
+      WarehouseListener[] aux = Arrays.copyOf(listeners, listeners.length + 1);
+      aux[aux.length - 1] = listener;
+      listeners = aux;
+    }
+  }
+  
+  /**
+   * Quita un observador de los cambios del almacen.
+   * @param listener    Observador.
+   */
+  void removeListener(WarehouseListener listener) {
+    synchronized (catalogLock) {
+      listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(WarehouseListener[]::new);
+    }
+  }
+  
+  /**
+   * Devuelve los articulos del almacen para recorrerlos.
+   * @return    Vista de los articulos del almacen.
+   */
+  Collection<Article> articles() {
+    return articles.values();
+  }
+  
+  /**
+   * Devuelve los articulos cuyas unidades estan en su stock de seguridad o por debajo, sin copiarlos.
+   * @return    Vista del indice de articulos a reponer.
+   */
+  Collection<Article> articlesAtOrBelowSecurityStock() {
+    return atOrBelowSecurityStock.values();
+  }
+  
+  /**
+   * Recibe el aviso de un articulo del almacen que va a cambiar, con el articulo bloqueado, para
+   * que las vistas abiertas guarden como estaba.
+   * @param article   Articulo que va a cambiar.
+   */
+  void articleWillChange(Article article) {
+    for (WarehouseSnapshot snapshot : snapshots) {
+      snapshot.preserve(article);
+    }
+  }
+  
+  /**
+   * Quita una vista cerrada para que deje de recibir los cambios.
+   * @param snapshot    Vista cerrada.
+   */
+  void closeSnapshot(WarehouseSnapshot snapshot) {
+    synchronized (catalogLock) {
+      snapshots = Arrays.stream(snapshots).filter(s -> s != snapshot).toArray(WarehouseSnapshot[]::new);
+    }
+  }
+  
+  /**
+   * Recibe el aviso de un articulo del almacen que ha cambiado y se lo pasa a los observadores.
+   * @param article   Articulo que ha cambiado.
+   */
+  void articleChanged(Article article) {
+    updateSecurityStockIndex(article);
+    for (WarehouseListener listener : listeners) {
+      listener.articleChanged(article);
+    }
+  }
+  
+  /**
+   * Mete o saca el articulo del indice de articulos en el stock de seguridad o por debajo. Se llama
+   * con el cerrojo del articulo tomado, asi que la ultima actualizacion siempre ve sus ultimos datos.
+   * @param article   Articulo que ha cambiado.
+   */
+  private void updateSecurityStockIndex(Article article) {
+    if (article.getUnits() <= article.getSecurityStock()) {
+      atOrBelowSecurityStock.put(article.getCode(), article);
+    } else {
+      atOrBelowSecurityStock.remove(article.getCode());
+    }
+  }
+  
+  /**
+   * Devuelve el articulo con ese codigo o null si no existe.
+   * @param code    Codigo del articulo.
+   * @return        Articulo o null.
+   */
+  Article findArticle(int code) {
+    return articles.get(code);
+  }
+  
+  /**
+   * Devuelve la marca de agua del repartidor de codigos.
+   * @return    Primer codigo a partir del cual no se ha repartido ninguno.
+   */
+  int nextCode() {
+    return codeAllocator.getHighWaterMark();
+  }
+  
+  private void fireUnitsChanged(Article article, int delta) {
+    for (WarehouseListener listener : listeners) {
+      listener.unitsChanged(article, delta);
+    }
+  }
+  
+  /**
+   * Avisa a los observadores de que el hilo actual va a cambiar el almacen. Si alguno impide el
+   * cambio, se termina la operacion en los ya avisados antes de lanzar su excepcion.
+   * @param changes   Numero maximo de avisos de cambio que dara la operacion.
+   * @return          Observadores avisados, a los que se avisa al terminar con {@link #fireCommitted(WarehouseListener[])}.
+   */
+  private WarehouseListener[] fireBeforeChange(int changes) {
+    WarehouseListener[] notified = listeners;
+    for (int i = 0; i < notified.length; i++) {
+      try {
+        notified[i].beforeChange(changes);
+      } catch (RuntimeException e) {
+        fireCommitted(Arrays.copyOf(notified, i));
+        throw e;
+      }
+    }
+    return notified;
+  }
+  
+  /**
+   * Avisa del fin de la operacion a los observadores avisados al empezarla, tambien si se ha
+   * rechazado o ha fallado. Se avisa a todos aunque alguno falle y luego se lanza el primer error.
+   * @param notified    Observadores avisados por {@link #fireBeforeChange(int)}.
+   */
+  private static void fireCommitted(WarehouseListener[] notified) {
+    RuntimeException failure = null;
+    for (WarehouseListener listener : notified) {
+      try {
+        listener.committed();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+  
+  /**
+   * Devuelve el articulo con ese codigo buscandolo en el indice principal.
+   * 
+   * @param code    Codigo del articulo.
+   * @return        Articulo que tiene ese codigo.
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   */
+  
+  private Article getArticle(int code) throws WarehouseArticleNotExistsException {
+    Article aux = articles.get(code);
+    if (aux == null) {
+      throw new WarehouseArticleNotExistsException("El articulo no existe", false);
+    }
+    return aux;
+  }
+  
+  
+  /**
+   * Devuelve las metricas de las operaciones del almacen, para consultarlas o publicarlas por JMX
+   * con {@link WarehouseMetrics#register(String)}. Las cargas desde fichero estan en
+   * {@link #getLoadMetrics()}.
+   * 
+   * @return    Metricas del almacen.
+   */
+  
+  public WarehouseMetrics getMetrics() {
+    return metrics;
+  }
+  
+  /**
+   * Devuelve las metricas de las cargas desde fichero de todos los almacenes, tambien de las que
+   * fallan. Son siempre las mismas, asi que se publican por JMX una sola vez.
+   * 
+   * @return    Metricas de las cargas.
+   */
+  
+  public static WarehouseMetrics getLoadMetrics() {
+    return LOAD_METRICS;
+  }
+  
+  /**
+   * Indica si el almacen se creo en modo concurrente y se puede usar desde varios hilos.
+   * 
+   * @return    Si el almacen es concurrente.
+   */
+  
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+  
+  /**
+   * Devuelve el cerrojo de las unidades de un articulo.
+   * @param article   Articulo.
+   * @return          Cerrojo que hay que tomar antes que el monitor del articulo para cambiar sus unidades.
+   */
+  private ReentrantLock unitsLock(Article article) {
+    return unitsLocks[article.getCode() & (UNITS_LOCKS - 1)];
+  }
+  
+  /**
+   * Registra en las metricas el resultado de una entrada o salida. Los movimientos rechazados
+   * cuentan como errores del tipo de excepcion que lanzaria la version que lanza excepciones.
+   * 
+   * @param operation   Operacion.
+   * @param start       Comienzo de la operacion.
+   * @param status      Resultado del movimiento.
+   */
+  private void recordMovement(WarehouseOperation operation, long start, MovementStatus status) {
+    switch (status) {
+      case OK:
+        metrics.succeeded(operation, start);
+        break;
+      case ARTICLE_NOT_FOUND:
+        metrics.failed(operation, start, WarehouseArticleNotExistsException.class);
+        break;
+      case INSUFFICIENT_STOCK:
+        metrics.failed(operation, start, ArticleStockException.class);
+        break;
+      default:
+        metrics.failed(operation, start, ArticleIllegalArgumentException.class);
+        break;
+    }
+  }
+  
+  /**
+   * Lanza la excepción que corresponde al resultado de un movimiento que no se ha podido hacer.
+   * 
+   * @param status    Resultado del movimiento.
+   * @throws WarehouseArticleNotExistsException     Si no existe el articulo.
+   */
+  private void throwExceptionIfMovementFailed(MovementStatus status) throws WarehouseArticleNotExistsException {
+    if (status == MovementStatus.ARTICLE_NOT_FOUND) {
+      throw new WarehouseArticleNotExistsException("El articulo no existe", false);
+    }
+    if (status == MovementStatus.INVALID_UNITS) {
+      throw new ArticleIllegalArgumentException("Las unidades a modificar no pueden ser negativa");
+    }
+    if (status == MovementStatus.TOO_MANY_UNITS) {
+      throw new ArticleIllegalArgumentException("El articulo no puede tener tantas unidades");
+    }
+  }
+  
+  /**
+   * Abre una vista de solo lectura del almacen tal como esta ahora. Mientras se lee la vista el
+   * almacen sigue admitiendo cambios sin esperar. Hay que cerrarla al terminar.
+   * 
+   * @return    Vista del almacen.
+   */
+  
+  public WarehouseSnapshot openSnapshot() {
+    synchronized (catalogLock) {
+      snapshotGate.writeLock().lock();
+      try {
+        WarehouseSnapshot snapshot = new WarehouseSnapshot(this, ++version, codeAllocator.getHighWaterMark());
+        WarehouseSnapshot[] aux = Arrays.copyOf(snapshots, snapshots.length + 1);
+        aux[aux.length - 1] = snapshot;
+        snapshots = aux;
+        return snapshot;
+      } finally {
+        snapshotGate.writeLock().unlock();
+      }
+    }
+  }
+  
+  /**
+   * Guarda el almacen en un fichero XML. Se guarda una vista del almacen, asi que el fichero
+   * refleja un unico momento aunque otros hilos sigan cambiando el almacen.
+   * 
+   * @param fileName    Nombre del archivo XML
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+  
+  public void save(String fileName) throws WarehousePersistenceException {
+    long start = metrics.start();
+    try (WarehouseSnapshot snapshot = openSnapshot()) {
+      snapshot.save(fileName);
+    } catch (WarehousePersistenceException | RuntimeException e) {
+      metrics.failed(WarehouseOperation.SAVE, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.SAVE, start);
+  }
+  
+  /**
+   * Guarda el almacen en una instantanea binaria, mucho mas rapida de cargar que el XML. Igual que
+   * {@link #save(String)}, guarda una vista del almacen.
+   * 
+   * @param fileName    Nombre del archivo binario
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+  
+  public void saveBinary(String fileName) throws WarehousePersistenceException {
+    long start = metrics.start();
+    try (WarehouseSnapshot snapshot = openSnapshot()) {
+      snapshot.saveBinary(fileName);
+    } catch (WarehousePersistenceException | RuntimeException e) {
+      metrics.failed(WarehouseOperation.SAVE, start, e.getClass());
+      throw e;
+    }
+    metrics.succeeded(WarehouseOperation.SAVE, start);
+  }
+  
+  /**
+   * Crea un nuevo almacen a partir de una instantanea binaria guardada con {@link #saveBinary(String)}.
+   * 
+   * @param route   Ruta de la instantanea binaria.
+   * @return        Almacen con los articulos de la instantanea.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o su contenido no es valido.
+   */
+  
+  public static Warehouse loadBinary(String route) throws WarehousePersistenceException {
+    return loadBinary(route, false);
+  }
+  
+  /**
+   * Crea un nuevo almacen a partir de una instantanea binaria guardada con {@link #saveBinary(String)}.
+   * 
+   * @param route         Ruta de la instantanea binaria.
+   * @param concurrent    Si el almacen se va a usar desde varios hilos.
+   * @return              Almacen con los articulos de la instantanea.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o su contenido no es valido.
+   */
+  
+  public static Warehouse loadBinary(String route, boolean concurrent) throws WarehousePersistenceException {
+    Warehouse warehouse = new Warehouse(concurrent);
+    long start = LOAD_METRICS.start();
+    try {
+      WarehouseBinarySnapshot.read(route, warehouse);
+    } catch (WarehousePersistenceException | RuntimeException e) {
+      LOAD_METRICS.failed(WarehouseOperation.LOAD, start, e.getClass());
+      throw e;
+    }
+    LOAD_METRICS.succeeded(WarehouseOperation.LOAD, start);
+    return warehouse;
+  }
+}
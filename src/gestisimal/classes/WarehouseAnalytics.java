@@ -0,0 +1,79 @@
+package gestisimal.classes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Cálculos de valoración del inventario de un almacén. Se hacen como reducciones en paralelo
+ * sobre los artículos, repartiendo el trabajo entre todos los núcleos con el pool fork-join común:
+ * cada tarea acumula su parte y después se combinan los resultados parciales.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseAnalytics {
+  private final Warehouse warehouse;
+  
+  /**
+   * Crea los cálculos sobre el almacén indicado.
+   * 
+   * @param warehouse   Almacén a valorar.
+   */
+  public WarehouseAnalytics(Warehouse warehouse) {
+    this.warehouse = warehouse;
+  }
+  
+  /**
+   * Valora todo el inventario del almacén.
+   * 
+   * @return    Valoración total.
+   */
+  
+  public InventoryValuation valuation() {
+    return stream().collect(InventoryValuation::new, InventoryValuation::add, InventoryValuation::combine);
+  }
+  
+  /**
+   * Valora el inventario de cada marca.
+   * 
+   * @return    Valoración de cada marca.
+   */
+  
+  public Map<String, InventoryValuation> valuationByBrand() {
+    return stream().collect(HashMap::new, 
+        (Map<String, InventoryValuation> map, Article art) -> map.computeIfAbsent(art.getBrand(), b -> new InventoryValuation()).add(art),
+        (map, other) -> other.forEach((brand, value) -> map.merge(brand, value, InventoryValuation::combine)));
+  }
+  
+  /**
+   * Devuelve el valor del inventario a precio de compra.
+   * 
+   * @return    Suma de unidades por precio de compra.
+   */
+  
+  public double inventoryValueAtCost() {
+    return valuation().getValueAtCost();
+  }
+  
+  /**
+   * Devuelve el valor del inventario a precio de venta.
+   * 
+   * @return    Suma de unidades por precio de venta.
+   */
+  
+  public double inventoryValueAtRetail() {
+    return valuation().getValueAtRetail();
+  }
+  
+  /**
+   * Recorre todos los artículos del almacén.
+   * 
+   * @return    Flujo de artículos.
+   */
+  
+  private Stream<Article> stream() {
+    return ArticleStreams.of(warehouse.articles());
+  }
+}
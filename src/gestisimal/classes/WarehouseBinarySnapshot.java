@@ -0,0 +1,222 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import gestisimal.exceptions.ArticleIllegalArgumentException;
+import gestisimal.exceptions.WarehousePersistenceException;
+import gestisimal.monitoring.WarehouseLoadEvent;
+import gestisimal.monitoring.WarehouseSaveEvent;
+
+/**
+ * Instantánea binaria del almacén. El fichero tiene una cabecera, un registro de ancho fijo por
+ * artículo y una tabla de cadenas donde cada nombre o marca aparece una sola vez:
+ * 
+ * <pre>
+ * cabecera (32 bytes)  magic, version, nextCode, articulos, cadenas, desplazamiento de la tabla (long), reservado
+ * registro (40 bytes)  code, name, brand, units, securityStock, maxStock (int), buyingPrice, sellingPrice (double)
+ * tabla de cadenas     longitud (int) y bytes UTF-8 de cada cadena
+ * </pre>
+ * 
+ * Todos los números van en little endian. Para cargarlo el fichero se proyecta en memoria con
+ * {@link FileChannel#map}, sin copiarlo a búferes intermedios.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+class WarehouseBinarySnapshot {
+  static final int MAGIC = 0x53485747; // "GWHS"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int RECORD_SIZE = 40;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  
+  private WarehouseBinarySnapshot() {
+  }
+  
+  /**
+   * Escribe la instantánea binaria de los artículos.
+   * 
+   * @param fileName    Ruta del fichero.
+   * @param articles    Artículos a guardar.
+   * @param nextCode    Marca de agua del repartidor de códigos.
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+  
+  static void write(String fileName, Iterable<Article> articles, int nextCode) throws WarehousePersistenceException {
+    WarehouseSaveEvent event = new WarehouseSaveEvent();
+    event.begin();
+    int[] count = new int[1];
+    long bytes = -1;
+    try {
+      bytes = SnapshotFiles.writeAtomically(Path.of(fileName), channel -> count[0] = write(channel, articles, nextCode));
+    } catch (Exception e) {
+      throw new WarehousePersistenceException("No se puede guardar el almacen en " + fileName, e);
+    } finally {
+      SnapshotFiles.commit(event, fileName, "binary", count[0], bytes);
+    }
+  }
+  
+  private static int write(FileChannel channel, Iterable<Article> articles, int nextCode) throws IOException {
+    Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    int count = 0;
+    
+    channel.position(HEADER_SIZE);
+    for (Article art : articles) {
+      if (buffer.remaining() < RECORD_SIZE) {
+        flush(channel, buffer);
+      }
+      synchronized (art) {
+        buffer.putInt(art.getCode());
+        buffer.putInt(stringIndex.computeIfAbsent(art.getName(), s -> addString(strings, s)));
+        buffer.putInt(stringIndex.computeIfAbsent(art.getBrand(), s -> addString(strings, s)));
+        buffer.putInt(art.getUnits());
+        buffer.putInt(art.getSecurityStock());
+        buffer.putInt(art.getMaxStock());
+        buffer.putDouble(art.getBuyingPrice());
+        buffer.putDouble(art.getSellingPrice());
+      }
+      count++;
+    }
+    flush(channel, buffer);
+    
+    long stringsOffset = channel.position();
+    for (String s : strings) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      if (buffer.remaining() < Integer.BYTES + bytes.length) {
+        flush(channel, buffer);
+      }
+      buffer.putInt(bytes.length);
+      if (bytes.length > buffer.remaining()) {
+        flush(channel, buffer);
+        ByteBuffer large = ByteBuffer.wrap(bytes);
+        while (large.hasRemaining()) {
+          channel.write(large);
+        }
+      } else {
+        buffer.put(bytes);
+      }
+    }
+    flush(channel, buffer);
+    
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(nextCode).putInt(count).putInt(strings.size())
+        .putLong(stringsOffset).putInt(0);
+    buffer.flip();
+    long position = 0;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    return count;
+  }
+  
+  private static int addString(List<String> strings, String s) {
+    strings.add(s);
+    return strings.size() - 1;
+  }
+  
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+  
+  /**
+   * Carga la instantánea binaria en el almacén.
+   * 
+   * @param route         Ruta del fichero.
+   * @param warehouse     Almacén donde se cargan los artículos.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o no es válido.
+   */
+  
+  static void read(String route, Warehouse warehouse) throws WarehousePersistenceException {
+    WarehouseLoadEvent event = new WarehouseLoadEvent();
+    event.begin();
+    int count = -1;
+    long bytes = 0;
+    try (FileChannel channel = FileChannel.open(Path.of(route), StandardOpenOption.READ)) {
+      bytes = channel.size();
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      count = read(map, warehouse, route);
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se puede leer el fichero " + route, e);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new WarehousePersistenceException("El fichero " + route + " está truncado o dañado", e);
+    } finally {
+      if (event.shouldCommit()) {
+        event.file = route;
+        event.format = "binary";
+        event.articleCount = Math.max(count, 0);
+        event.bytesRead = bytes;
+        event.succeeded = count >= 0;
+        event.commit();
+      }
+    }
+  }
+  
+  private static int read(ByteBuffer map, Warehouse warehouse, String route) throws WarehousePersistenceException {
+    if (map.limit() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+      throw new WarehousePersistenceException("El fichero " + route + " no es una instantánea binaria del almacén");
+    }
+    int version = map.getInt(4);
+    if (version != VERSION) {
+      throw new WarehousePersistenceException("Versión de instantánea no soportada: " + version);
+    }
+    int nextCode = map.getInt(8);
+    int count = map.getInt(12);
+    int stringCount = map.getInt(16);
+    long stringsOffset = map.getLong(20);
+    if (count < 0 || stringCount < 0 || stringsOffset != HEADER_SIZE + (long) count * RECORD_SIZE
+        || stringsOffset > map.limit() || stringCount > (map.limit() - stringsOffset) / Integer.BYTES) {
+      throw new WarehousePersistenceException("El fichero " + route + " está truncado o dañado");
+    }
+    
+    String[] strings = new String[stringCount];
+    map.position((int) stringsOffset);
+    for (int i = 0; i < stringCount; i++) {
+      int length = map.getInt();
+      if (length < 0 || length > map.remaining()) {
+        throw new WarehousePersistenceException("El fichero " + route + " está truncado o dañado (cadena " + i + ")");
+      }
+      byte[] bytes = new byte[length];
+      map.get(bytes);
+      strings[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    warehouse.advanceCodesTo(nextCode);
+    map.position(HEADER_SIZE);
+    for (int i = 0; i < count; i++) {
+      int code = map.getInt();
+      String name = strings[map.getInt()];
+      String brand = strings[map.getInt()];
+      int units = map.getInt();
+      int securityStock = map.getInt();
+      int maxStock = map.getInt();
+      double buyingPrice = map.getDouble();
+      double sellingPrice = map.getDouble();
+      try {
+        if (!warehouse.restoreArticle(code, name, brand, buyingPrice, sellingPrice, units, securityStock, maxStock)) {
+          throw new WarehousePersistenceException("Artículo repetido en la instantánea (código " + code + ")");
+        }
+      } catch (ArticleIllegalArgumentException e) {
+        throw new WarehousePersistenceException("Artículo no válido en la instantánea (código " + code + "): " + e.getMessage());
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,416 @@
+package gestisimal.classes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publica los cambios de un almacén (altas, bajas, modificaciones y entradas y salidas de
+ * mercancía) en un anillo de eventos creados de antemano, para que otros sistemas los consuman
+ * sin frenar al almacén. Sigue el patrón del Disruptor.
+ *
+ * <ul>
+ * <li>Publicar un cambio es tomar la siguiente posición del anillo con una operación atómica,
+ * copiar los datos del artículo en el evento que ya está en esa posición y marcarla como
+ * publicada. No se crean objetos ni se usan cerrojos.</li>
+ * <li>Cada consumidor ({@link ChangeHandler}) tiene su propio hilo y recibe todos los cambios en
+ * orden. Lee en lotes todo lo publicado desde su última lectura y, cuando no hay nada, espera
+ * sin que quien publica tenga que despertarle.</li>
+ * <li>Los cambios se publican con los cerrojos del almacén tomados, así que no pueden esperar.
+ * Por eso cada operación reserva sitio en el anillo para sus cambios en
+ * {@link WarehouseListener#beforeChange(int)}, antes de tomar ningún cerrojo, y al publicar ya
+ * lo tiene. Si el anillo se llena porque algún consumidor va retrasado, la operación espera a que
+ * libere sitio antes de empezar: los cambios nunca se pierden, pero un consumidor lento acaba
+ * frenando al almacén. Por eso los consumidores no deben cambiar el almacén.</li>
+ * <li>Los errores de los consumidores se pasan a un {@link #setErrorHandler(ChangeErrorHandler)
+ * gestor de errores}, que por defecto los escribe en la salida de errores.</li>
+ * </ul>
+ *
+ * <p>Se reserva sitio y no posiciones concretas: la posición se toma al publicar, con el artículo
+ * bloqueado, para que los cambios de un mismo artículo queden en el orden en que se aplican. El
+ * almacén se cambia desde varios hilos a la vez, así que el sitio se reserva con una comparación e
+ * intercambio y cada posición se marca publicada por separado; los consumidores solo avanzan hasta
+ * la primera posición tomada que aún no se ha publicado.</p>
+ *
+ * <p>Solo publica con espera, y con los cerrojos tomados, una operación que da más cambios de los
+ * que caben en el anillo o que empezó antes de arrancar la publicación. El anillo debe ser mayor
+ * que el lote de movimientos más grande que se aplique.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseChangeFeed implements AutoCloseable {
+  /**
+   * Tamaño por defecto del anillo.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private static final int SPIN_TRIES = 100;
+  private static final int YIELD_TRIES = 100;
+  private static final long PARK_NANOS = 50_000;
+
+  private final Warehouse warehouse;
+  private final ChangeEvent[] entries;
+  private final int mask;
+  /**
+   * Secuencia publicada en cada posición del anillo.
+   */
+  private final AtomicLongArray published;
+  /**
+   * Última secuencia tomada para publicar.
+   */
+  private final AtomicLong cursor = new AtomicLong(-1);
+  /**
+   * Última secuencia con sitio reservado. Nunca es menor que {@link #cursor}: la diferencia es el
+   * sitio reservado que las operaciones en curso aún no han usado.
+   */
+  private final AtomicLong reserved = new AtomicLong(-1);
+  /**
+   * Sitio reservado que le queda al hilo actual y operaciones suyas anidadas en curso.
+   */
+  private final ThreadLocal<int[]> reservation = ThreadLocal.withInitial(() -> new int[2]);
+  /**
+   * Última secuencia que han procesado todos los consumidores, la última vez que se miró.
+   */
+  private volatile long gatingCache = -1;
+  private volatile ChangeErrorHandler errorHandler = (consumer, event, sequence, error) ->
+      System.err.println("Error en el consumidor " + consumer + " (secuencia " + sequence + "): " + error);
+  private final List<Consumer> pending = new ArrayList<Consumer>();
+  private volatile Consumer[] consumers = new Consumer[0];
+  private final Listener listener = new Listener();
+  private volatile boolean running;
+
+  /**
+   * Crea la publicación de cambios de un almacén con el anillo del tamaño por defecto.
+   *
+   * @param warehouse   Almacén cuyos cambios se publican.
+   */
+
+  public WarehouseChangeFeed(Warehouse warehouse) {
+    this(warehouse, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Crea la publicación de cambios de un almacén. No se publica nada hasta {@link #start()}.
+   *
+   * @param warehouse     Almacén cuyos cambios se publican.
+   * @param bufferSize    Tamaño del anillo, potencia de dos.
+   */
+
+  public WarehouseChangeFeed(Warehouse warehouse, int bufferSize) {
+    if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+      throw new IllegalArgumentException("El tamaño del anillo debe ser una potencia de dos");
+    }
+    this.warehouse = warehouse;
+    this.entries = new ChangeEvent[bufferSize];
+    this.mask = bufferSize - 1;
+    this.published = new AtomicLongArray(bufferSize);
+    for (int i = 0; i < bufferSize; i++) {
+      entries[i] = new ChangeEvent();
+      published.set(i, -1);
+    }
+  }
+
+  /**
+   * Añade un consumidor. Solo se pueden añadir antes de {@link #start()}.
+   *
+   * @param name      Nombre del consumidor, para su hilo.
+   * @param handler   Consumidor.
+   */
+
+  public synchronized void addHandler(String name, ChangeHandler handler) {
+    if (running) {
+      throw new IllegalStateException("No se pueden añadir consumidores después de arrancar");
+    }
+    pending.add(new Consumer(name, handler));
+  }
+
+  /**
+   * Cambia quién recibe los errores de los consumidores.
+   *
+   * @param errorHandler    Gestor de errores.
+   */
+
+  public void setErrorHandler(ChangeErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+  }
+
+  /**
+   * Engancha la publicación al almacén y arranca los hilos de los consumidores.
+   */
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    consumers = pending.toArray(new Consumer[0]);
+    running = true;
+    for (Consumer consumer : consumers) {
+      consumer.thread.start();
+    }
+    warehouse.addListener(listener);
+  }
+
+  /**
+   * Desengancha la publicación del almacén y para los consumidores después de que procesen todo
+   * lo publicado. Si se interrumpe la espera, los consumidores terminan por su cuenta.
+   */
+
+  @Override
+  public synchronized void close() {
+    if (!running) {
+      return;
+    }
+    warehouse.removeListener(listener);
+    running = false;
+    for (Consumer consumer : consumers) {
+      LockSupport.unpark(consumer.thread);
+    }
+    try {
+      for (Consumer consumer : consumers) {
+        consumer.thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Devuelve la secuencia del último cambio publicado o que se está publicando.
+   *
+   * @return    Secuencia, o -1 si no se ha publicado nada.
+   */
+
+  public long getCursor() {
+    return cursor.get();
+  }
+
+  /**
+   * Devuelve cuántos cambios más caben en el anillo antes de que las operaciones tengan que
+   * esperar, descontando el sitio ya reservado.
+   *
+   * @return    Posiciones libres.
+   */
+
+  public long remainingCapacity() {
+    return entries.length - (reserved.get() - minimumSequence(cursor.get()));
+  }
+
+  /**
+   * Reserva sitio para los cambios de la operación que empieza en el hilo actual. Se llama sin
+   * cerrojos, así que puede esperar a que los consumidores liberen sitio. Una operación anidada
+   * usa el sitio de la que la contiene.
+   *
+   * @param changes   Número máximo de cambios de la operación.
+   */
+
+  private void reserve(int changes) {
+    int[] current = reservation.get();
+    if (current[1]++ > 0 || !running || changes <= 0) {
+      return;
+    }
+    int count = Math.min(changes, entries.length);
+    if (claim(reserved, count) >= 0) {
+      current[0] = count;
+    }
+  }
+
+  /**
+   * Devuelve el sitio que la operación del hilo actual ha reservado y no ha usado.
+   */
+
+  private void release() {
+    int[] current = reservation.get();
+    if (current[1] == 0 || --current[1] > 0) {
+      return;
+    }
+    if (current[0] > 0) {
+      reserved.addAndGet(-current[0]);
+      current[0] = 0;
+    }
+  }
+
+  /**
+   * Publica un cambio. Se llama desde los avisos del almacén, con el artículo bloqueado. Con sitio
+   * reservado no espera nunca; sin él reserva ahora, esperando si el anillo está lleno.
+   *
+   * @param type      Tipo de cambio.
+   * @param article   Artículo que ha cambiado.
+   * @param delta     Variación de unidades.
+   */
+
+  private void publish(ChangeType type, Article article, int delta) {
+    int[] current = reservation.get();
+    if (current[0] > 0) {
+      current[0]--;
+    } else if (claim(reserved, 1) < 0) {
+      // La publicación se ha cerrado mientras esperaba
+      return;
+    }
+    long sequence = cursor.incrementAndGet();
+    entries[(int) sequence & mask].set(type, article, delta);
+    published.lazySet((int) sequence & mask, sequence);
+  }
+
+  /**
+   * Reserva sitio para varios cambios, esperando si el anillo está lleno.
+   *
+   * @param counter   Contador de sitio reservado.
+   * @param count     Cambios para los que se reserva sitio.
+   * @return          Última secuencia reservada, o -1 si la publicación se ha cerrado mientras esperaba.
+   */
+
+  private long claim(AtomicLong counter, int count) {
+    for (;;) {
+      long current = counter.get();
+      long next = current + count;
+      long wrapPoint = next - entries.length;
+      if (wrapPoint > gatingCache) {
+        long gating = minimumSequence(cursor.get());
+        if (wrapPoint > gating) {
+          if (!running) {
+            return -1;
+          }
+          LockSupport.parkNanos(1);
+          continue;
+        }
+        gatingCache = gating;
+      }
+      if (counter.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  private long minimumSequence(long current) {
+    long minimum = current;
+    for (Consumer consumer : consumers) {
+      minimum = Math.min(minimum, consumer.sequence.get());
+    }
+    return minimum;
+  }
+
+  /**
+   * Devuelve la última secuencia publicada sin huecos desde {@code from}.
+   *
+   * @param from    Primera secuencia a comprobar.
+   * @param to      Última secuencia reservada.
+   * @return        Última secuencia que se puede leer, o {@code from - 1} si ninguna.
+   */
+
+  private long highestPublished(long from, long to) {
+    for (long sequence = from; sequence <= to; sequence++) {
+      if (published.get((int) sequence & mask) != sequence) {
+        return sequence - 1;
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Consumidor con su hilo y la última secuencia que ha procesado.
+   */
+
+  private final class Consumer implements Runnable {
+    private final String name;
+    private final ChangeHandler handler;
+    private final AtomicLong sequence = new AtomicLong(-1);
+    private final Thread thread;
+
+    Consumer(String name, ChangeHandler handler) {
+      this.name = name;
+      this.handler = handler;
+      this.thread = new Thread(this, "gestisimal-change-feed-" + name);
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long next = sequence.get() + 1;
+      int idle = 0;
+      while (true) {
+        long available = highestPublished(next, cursor.get());
+        if (available >= next) {
+          for (long current = next; current <= available; current++) {
+            try {
+              handler.onEvent(entries[(int) current & mask], current, current == available);
+            } catch (Exception e) {
+              reportError(entries[(int) current & mask], current, e);
+            }
+          }
+          sequence.lazySet(available);
+          next = available + 1;
+          idle = 0;
+        } else if (!running && next > cursor.get()) {
+          return;
+        } else {
+          idle = idle(idle);
+        }
+      }
+    }
+
+    private void reportError(ChangeEvent event, long current, Exception error) {
+      try {
+        errorHandler.onError(name, event, current, error);
+      } catch (RuntimeException e) {
+        // Un gestor de errores que falla no debe parar al consumidor
+      }
+    }
+
+    /**
+     * Espera sin bloquear a quien publica: primero activamente, luego cediendo el procesador y
+     * por último durmiendo un poco.
+     */
+
+    private int idle(int tries) {
+      if (tries < SPIN_TRIES) {
+        Thread.onSpinWait();
+      } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(PARK_NANOS);
+        return tries;
+      }
+      return tries + 1;
+    }
+  }
+
+  /**
+   * Publica los cambios del almacén.
+   */
+
+  private class Listener implements WarehouseListener {
+
+    @Override
+    public void beforeChange(int changes) {
+      reserve(changes);
+    }
+
+    @Override
+    public void committed() {
+      release();
+    }
+
+    @Override
+    public void articleAdded(Article article) {
+      publish(ChangeType.ADDED, article, 0);
+    }
+
+    @Override
+    public void articleDeleted(Article article) {
+      publish(ChangeType.DELETED, article, 0);
+    }
+
+    @Override
+    public void articleModified(Article article) {
+      publish(ChangeType.MODIFIED, article, 0);
+    }
+
+    @Override
+    public void unitsChanged(Article article, int delta) {
+      publish(ChangeType.UNITS_CHANGED, article, delta);
+    }
+  }
+}
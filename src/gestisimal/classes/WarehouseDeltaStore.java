@@ -0,0 +1,364 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Guardado incremental de un almacén. Se lleva la cuenta de los artículos que han cambiado desde
+ * el último guardado (a través de los métodos de {@link Article} que los modifican y de las altas
+ * y bajas) y cada guardado escribe solo esos artículos en un segmento de cambios. Así el coste de
+ * guardar depende de cuántos artículos cambian y no del tamaño del catálogo.
+ *
+ * <p>El directorio contiene una instantánea base ({@code base-NNNNNNNN.bin}) y los segmentos de
+ * cambios ({@code delta-NNNNNNNN.bin}). El número de la base es el del último segmento que ya
+ * incluye; al cargar se ignoran esos segmentos, así que si se interrumpe una fusión antes de
+ * borrarlos no se vuelven a aplicar cambios antiguos sobre una base más reciente. Cuando hay más
+ * de {@link #setMaxDeltas(int) cierto número} de segmentos, el siguiente guardado los fusiona
+ * escribiendo una base nueva.</p>
+ *
+ * <p>Formato de un segmento (little endian): magic, versión, nextCode, número de artículos
+ * cambiados y número de bajas; después los códigos dados de baja y por último cada artículo
+ * cambiado con su código, nombre y marca (longitud y bytes UTF-8), precios y stocks.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseDeltaStore {
+  /**
+   * Número de segmentos de cambios por defecto a partir del cual se fusionan en la base.
+   */
+  public static final int DEFAULT_MAX_DELTAS = 16;
+
+  private static final String BASE_PREFIX = "base-";
+  private static final String DELTA_PREFIX = "delta-";
+  private static final String SUFFIX = ".bin";
+  private static final int MAGIC = 0x44485747; // "GWHD"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 20;
+
+  private final Path directory;
+  private final Warehouse warehouse;
+  /**
+   * Códigos de los artículos cambiados y dados de baja desde el último guardado.
+   */
+  private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+  private final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+  private long lastDelta;
+  /**
+   * Último segmento incluido en la base actual.
+   */
+  private long baseDelta;
+  private int deltas;
+  private int maxDeltas = DEFAULT_MAX_DELTAS;
+
+  private WarehouseDeltaStore(Path directory, Warehouse warehouse) {
+    this.directory = directory;
+    this.warehouse = warehouse;
+  }
+
+  /**
+   * Abre el directorio cargando la base y aplicando los segmentos de cambios en orden. Si el
+   * directorio no existe se crea y el almacén empieza vacío.
+   *
+   * @param directory     Directorio del guardado incremental.
+   * @param concurrent    Si el almacén se va a usar desde varios hilos.
+   * @return              Almacenamiento abierto.
+   * @throws WarehousePersistenceException    Si no se puede leer o crear el directorio.
+   */
+
+  public static WarehouseDeltaStore open(String directory, boolean concurrent) throws WarehousePersistenceException {
+    Path dir = Path.of(directory);
+    WarehouseDeltaStore store = new WarehouseDeltaStore(dir, new Warehouse(concurrent));
+    try {
+      Files.createDirectories(dir);
+      store.load();
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se puede abrir el directorio " + directory, e);
+    }
+    store.warehouse.addListener(store.new DirtyTracker());
+    return store;
+  }
+
+  /**
+   * Devuelve el almacén que se guarda de forma incremental.
+   *
+   * @return    Almacén.
+   */
+
+  public Warehouse getWarehouse() {
+    return warehouse;
+  }
+
+  /**
+   * Cambia el número de segmentos de cambios a partir del cual se fusionan en la base.
+   *
+   * @param maxDeltas   Número máximo de segmentos.
+   */
+
+  public void setMaxDeltas(int maxDeltas) {
+    this.maxDeltas = maxDeltas;
+  }
+
+  /**
+   * Devuelve cuántos artículos cambiados o dados de baja se escribirán en el siguiente guardado.
+   *
+   * @return    Número de cambios pendientes.
+   */
+
+  public int pendingChanges() {
+    return dirty.size() + deleted.size();
+  }
+
+  /**
+   * Guarda los cambios desde el último guardado en un segmento nuevo, o fusiona todo en una base
+   * nueva si ya hay demasiados segmentos.
+   *
+   * @throws WarehousePersistenceException    Si no se puede escribir.
+   */
+
+  public synchronized void save() throws WarehousePersistenceException {
+    if (deltas >= maxDeltas) {
+      merge();
+    } else if (!dirty.isEmpty() || !deleted.isEmpty()) {
+      writeDelta();
+    }
+  }
+
+  /**
+   * Escribe una base nueva con todo el almacén y borra los segmentos de cambios.
+   *
+   * @throws WarehousePersistenceException    Si no se puede escribir.
+   */
+
+  public synchronized void merge() throws WarehousePersistenceException {
+    // Lo que cambie mientras se escribe la base sigue marcado y saldrá en el siguiente segmento
+    List<Integer> deletedCodes = drain(deleted);
+    dirty.clear();
+    long covered = lastDelta;
+    Path base = file(BASE_PREFIX, covered);
+    try {
+      warehouse.saveBinary(base.toString());
+    } catch (WarehousePersistenceException e) {
+      // La base anterior sigue siendo válida: se vuelve a marcar todo para el siguiente guardado
+      deleted.addAll(deletedCodes);
+      for (Article article : warehouse.articles()) {
+        dirty.add(article.getCode());
+      }
+      throw e;
+    }
+    baseDelta = covered;
+    deltas = 0;
+    try {
+      for (Path delta : files(DELTA_PREFIX)) {
+        if (fileNumber(delta, DELTA_PREFIX) <= covered) {
+          Files.delete(delta);
+        }
+      }
+      for (Path old : files(BASE_PREFIX)) {
+        if (!old.equals(base)) {
+          Files.delete(old);
+        }
+      }
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se pueden borrar los segmentos de " + directory, e);
+    }
+  }
+
+  /**
+   * Escribe los artículos marcados en un segmento nuevo.
+   *
+   * @throws WarehousePersistenceException    Si no se puede escribir.
+   */
+
+  private void writeDelta() throws WarehousePersistenceException {
+    List<Integer> deletedCodes = drain(deleted);
+    List<Article> changed = new ArrayList<Article>();
+    for (Integer code : drain(dirty)) {
+      Article article = warehouse.findArticle(code);
+      if (article != null) {
+        changed.add(article);
+      }
+    }
+    Path file = file(DELTA_PREFIX, lastDelta + 1);
+    try {
+      SnapshotFiles.writeAtomically(file, channel -> write(channel, changed, deletedCodes));
+    } catch (Exception e) {
+      // Se vuelven a marcar para no perderlos en el siguiente guardado
+      deleted.addAll(deletedCodes);
+      for (Article article : changed) {
+        dirty.add(article.getCode());
+      }
+      throw new WarehousePersistenceException("No se puede guardar el segmento " + file, e);
+    }
+    lastDelta++;
+    deltas++;
+  }
+
+  private void write(FileChannel channel, List<Article> changed, List<Integer> deletedCodes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(warehouse.nextCode()).putInt(changed.size()).putInt(deletedCodes.size());
+    for (int code : deletedCodes) {
+      buffer = ensure(channel, buffer, Integer.BYTES);
+      buffer.putInt(code);
+    }
+    for (Article art : changed) {
+      byte[] name;
+      byte[] brand;
+      synchronized (art) {
+        name = art.getName().getBytes(StandardCharsets.UTF_8);
+        brand = art.getBrand().getBytes(StandardCharsets.UTF_8);
+        buffer = ensure(channel, buffer, 4 + 4 + name.length + 4 + brand.length + 16 + 12);
+        buffer.putInt(art.getCode());
+        buffer.putInt(name.length).put(name);
+        buffer.putInt(brand.length).put(brand);
+        buffer.putDouble(art.getBuyingPrice()).putDouble(art.getSellingPrice());
+        buffer.putInt(art.getUnits()).putInt(art.getSecurityStock()).putInt(art.getMaxStock());
+      }
+    }
+    flush(channel, buffer);
+  }
+
+  private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush(channel, buffer);
+      if (buffer.capacity() < bytes) {
+        return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+    return buffer;
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static List<Integer> drain(Set<Integer> codes) {
+    List<Integer> drained = new ArrayList<Integer>();
+    for (Iterator<Integer> it = codes.iterator(); it.hasNext();) {
+      drained.add(it.next());
+      it.remove();
+    }
+    return drained;
+  }
+
+  /**
+   * Carga la base y aplica los segmentos de cambios.
+   *
+   * @throws IOException                      Si no se pueden leer los ficheros.
+   * @throws WarehousePersistenceException    Si algún fichero no es válido.
+   */
+
+  private void load() throws IOException, WarehousePersistenceException {
+    List<Path> bases = files(BASE_PREFIX);
+    if (!bases.isEmpty()) {
+      // Si se interrumpió una fusión puede quedar la base anterior: vale la más reciente
+      Path base = bases.get(bases.size() - 1);
+      WarehouseBinarySnapshot.read(base.toString(), warehouse);
+      baseDelta = fileNumber(base, BASE_PREFIX);
+      lastDelta = baseDelta;
+    }
+    for (Path delta : files(DELTA_PREFIX)) {
+      long number = fileNumber(delta, DELTA_PREFIX);
+      if (number > baseDelta) {
+        apply(delta);
+        lastDelta = number;
+        deltas++;
+      }
+    }
+  }
+
+  private void apply(Path delta) throws IOException, WarehousePersistenceException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(delta)).order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new WarehousePersistenceException("El fichero " + delta + " no es un segmento de cambios válido");
+    }
+    try {
+      warehouse.advanceCodesTo(buffer.getInt());
+      int changed = buffer.getInt();
+      int deletedCount = buffer.getInt();
+      int[] deletedCodes = new int[deletedCount];
+      for (int i = 0; i < deletedCount; i++) {
+        deletedCodes[i] = buffer.getInt();
+      }
+      for (int i = 0; i < changed; i++) {
+        warehouse.replayArticle(buffer.getInt(), getString(buffer), getString(buffer), buffer.getDouble(),
+            buffer.getDouble(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+      }
+      for (int code : deletedCodes) {
+        warehouse.replayDelete(code);
+      }
+    } catch (RuntimeException e) {
+      throw new WarehousePersistenceException("El segmento " + delta + " está truncado o dañado", e);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private Path file(String prefix, long number) {
+    return directory.resolve(String.format("%s%08d%s", prefix, number, SUFFIX));
+  }
+
+  /**
+   * Devuelve las bases o los segmentos del directorio ordenados por número.
+   */
+
+  private List<Path> files(String prefix) throws IOException {
+    List<Path> files = new ArrayList<Path>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    files.sort((a, b) -> Long.compare(fileNumber(a, prefix), fileNumber(b, prefix)));
+    return files;
+  }
+
+  private static long fileNumber(Path file, String prefix) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length()));
+  }
+
+  /**
+   * Marca los artículos que cambian, se dan de alta o se dan de baja.
+   */
+
+  private class DirtyTracker implements WarehouseListener {
+
+    @Override
+    public void articleAdded(Article article) {
+      dirty.add(article.getCode());
+    }
+
+    @Override
+    public void articleChanged(Article article) {
+      dirty.add(article.getCode());
+    }
+
+    @Override
+    public void articleDeleted(Article article) {
+      dirty.remove(article.getCode());
+      deleted.add(article.getCode());
+    }
+  }
+}
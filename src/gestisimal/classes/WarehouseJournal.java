@@ -0,0 +1,553 @@
+package gestisimal.classes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Diario de cambios de un almacén. Cada alta, baja, modificación y movimiento de mercancía se
+ * añade al final del diario en lugar de reescribir todo el almacén, así que el coste de hacer
+ * duradero un cambio no depende del tamaño del catálogo.
+ *
+ * <p>El cambio se aplica primero en memoria y se añade al diario mientras el almacén mantiene los
+ * cerrojos de la operación; la operación no termina hasta que el registro está sincronizado con
+ * el disco. Si la escritura falla, la operación que la provocó lanza
+ * {@link UncheckedIOException} y su cambio puede quedar en memoria sin estar en el diario, pero a
+ * partir de ese momento el diario rechaza cualquier otro cambio del almacén antes de aplicarlo,
+ * también con {@link UncheckedIOException}. Así lo que hay en el disco solo se queda atrás de
+ * lo que hay en memoria en las operaciones que estaban en curso al fallar.</p>
+ *
+ * <p>Las escrituras se confirman en grupo: mientras un hilo sincroniza el diario con el disco,
+ * los demás acumulan sus registros y el siguiente hilo los sincroniza todos con una sola
+ * llamada a {@link FileChannel#force(boolean)}. Cuando el diario crece más de
+ * {@link #setCompactionThreshold(long) un límite} se compacta en una instantánea binaria en un
+ * hilo aparte, sin retrasar la operación que lo ha hecho crecer; si la compactación falla se avisa
+ * al {@link #setCompactionErrorHandler(Consumer) gestor de errores}.</p>
+ *
+ * <p>El directorio del diario contiene la última instantánea ({@code snapshot.bin}) y los
+ * segmentos del diario ({@code journal-NNNNNNNN.log}). Al abrirlo se carga la instantánea y se
+ * vuelven a aplicar los segmentos en orden. Cada registro guarda el estado final de lo que
+ * cambia (por ejemplo las unidades tras un movimiento), por lo que aplicarlo de nuevo sobre una
+ * instantánea más reciente no altera el resultado.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseJournal implements Closeable {
+  /**
+   * Límite de tamaño del diario por defecto a partir del cual se compacta.
+   */
+  public static final long DEFAULT_COMPACTION_THRESHOLD = 64L * 1024 * 1024;
+
+  static final String SNAPSHOT_FILE = "snapshot.bin";
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final byte OP_ARTICLE = 1;
+  private static final byte OP_DELETE = 2;
+  private static final byte OP_UNITS = 3;
+
+  /**
+   * Cabecera de cada registro: longitud del contenido y su CRC.
+   */
+  private static final int RECORD_HEADER = 8;
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final Path directory;
+  private final Warehouse warehouse;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition flushed = lock.newCondition();
+  private final AtomicBoolean compacting = new AtomicBoolean();
+  /**
+   * Evita que dos compactaciones se solapen y una instantánea antigua sustituya a otra más reciente.
+   */
+  private final Object checkpointLock = new Object();
+  private final ThreadLocal<long[]> pendingPosition = ThreadLocal.withInitial(() -> new long[1]);
+  private final CRC32C crc = new CRC32C();
+
+  private FileChannel segment;
+  private long segmentNumber;
+  /**
+   * Registros aún no escritos y búfer que se está escribiendo en el disco.
+   */
+  private ByteBuffer pending = newBuffer(BUFFER_SIZE);
+  private ByteBuffer writing = newBuffer(BUFFER_SIZE);
+  /**
+   * Bytes añadidos y bytes ya sincronizados con el disco desde que se abrió el diario.
+   */
+  private long appended;
+  private long durable;
+  /**
+   * Tamaño del segmento actual en el disco.
+   */
+  private long segmentSize;
+  private boolean flushing;
+  /**
+   * Posición en el búfer pendiente del registro que se está añadiendo.
+   */
+  private int recordStart;
+  /**
+   * Error de escritura que ha inutilizado el diario. Se lee sin cerrojo antes de cada cambio.
+   */
+  private volatile IOException failure;
+  private volatile long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  private volatile Consumer<? super WarehousePersistenceException> compactionErrorHandler =
+      e -> System.err.println("Error al compactar el diario: " + e.getMessage());
+  private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "gestisimal-journal-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Listener listener = new Listener();
+
+  private WarehouseJournal(Path directory, Warehouse warehouse) {
+    this.directory = directory;
+    this.warehouse = warehouse;
+  }
+
+  /**
+   * Abre el diario del directorio recuperando el almacén guardado en él. Si el directorio no existe
+   * se crea y el almacén empieza vacío.
+   *
+   * @param directory     Directorio del diario.
+   * @param concurrent    Si el almacén se va a usar desde varios hilos.
+   * @return              Diario abierto.
+   * @throws WarehousePersistenceException    Si no se puede leer o crear el diario.
+   */
+
+  public static WarehouseJournal open(String directory, boolean concurrent) throws WarehousePersistenceException {
+    Path dir = Path.of(directory);
+    WarehouseJournal journal = new WarehouseJournal(dir, new Warehouse(concurrent));
+    try {
+      Files.createDirectories(dir);
+      journal.recover();
+      journal.openSegment(journal.segmentNumber + 1);
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se puede abrir el diario " + directory, e);
+    }
+    journal.warehouse.addListener(journal.listener);
+    return journal;
+  }
+
+  /**
+   * Devuelve el almacén cuyos cambios se guardan en este diario.
+   *
+   * @return    Almacén del diario.
+   */
+
+  public Warehouse getWarehouse() {
+    return warehouse;
+  }
+
+  /**
+   * Cambia el tamaño del diario a partir del cual se compacta automáticamente.
+   *
+   * @param compactionThreshold   Bytes del segmento actual.
+   */
+
+  public void setCompactionThreshold(long compactionThreshold) {
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Cambia quién recibe los errores de las compactaciones automáticas. Por defecto se escriben en
+   * la salida de errores. El diario sigue siendo válido tras un error de compactación y se vuelve
+   * a intentar cuando vuelve a crecer.
+   *
+   * @param handler   Gestor de los errores de compactación.
+   */
+
+  public void setCompactionErrorHandler(Consumer<? super WarehousePersistenceException> handler) {
+    this.compactionErrorHandler = handler;
+  }
+
+  /**
+   * Compacta el diario: empieza un segmento nuevo, guarda una instantánea del almacén y borra los
+   * segmentos anteriores, que ya están incluidos en ella.
+   *
+   * @throws WarehousePersistenceException    Si no se puede escribir la instantánea.
+   */
+
+  public void checkpoint() throws WarehousePersistenceException {
+    synchronized (checkpointLock) {
+      compact();
+    }
+  }
+
+  private void compact() throws WarehousePersistenceException {
+    long previous;
+    lock.lock();
+    try {
+      flushPending();
+      previous = segmentNumber;
+      segment.close();
+      openSegment(previous + 1);
+    } catch (IOException e) {
+      failure = e;
+      throw new WarehousePersistenceException("No se puede rotar el diario " + directory, e);
+    } finally {
+      lock.unlock();
+    }
+    warehouse.saveBinary(directory.resolve(SNAPSHOT_FILE).toString());
+    try {
+      for (Path old : segments()) {
+        if (segmentNumber(old) <= previous) {
+          Files.delete(old);
+        }
+      }
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se pueden borrar los segmentos antiguos de " + directory, e);
+    }
+  }
+
+  /**
+   * Sincroniza con el disco lo pendiente y cierra el diario. El almacén deja de registrar cambios.
+   */
+
+  @Override
+  public void close() throws IOException {
+    warehouse.removeListener(listener);
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    lock.lock();
+    try {
+      flushPending();
+      segment.close();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Carga la instantánea y aplica los segmentos del diario en orden.
+   *
+   * @throws IOException                      Si no se pueden leer los ficheros.
+   * @throws WarehousePersistenceException    Si la instantánea no es válida.
+   */
+
+  private void recover() throws IOException, WarehousePersistenceException {
+    Path snapshot = directory.resolve(SNAPSHOT_FILE);
+    if (Files.exists(snapshot)) {
+      WarehouseBinarySnapshot.read(snapshot.toString(), warehouse);
+    }
+    List<Path> segments = segments();
+    for (int i = 0; i < segments.size(); i++) {
+      Path file = segments.get(i);
+      segmentNumber = segmentNumber(file);
+      long valid = replay(file);
+      if (valid < Files.size(file)) {
+        if (i < segments.size() - 1) {
+          throw new WarehousePersistenceException("El segmento " + file + " está dañado");
+        }
+        // Registro a medias por una caída durante la escritura: se descarta
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          channel.truncate(valid);
+        }
+      }
+    }
+  }
+
+  /**
+   * Aplica los registros válidos del segmento.
+   *
+   * @param file    Segmento del diario.
+   * @return        Bytes del segmento que contienen registros completos y válidos.
+   * @throws IOException    Si no se puede leer el segmento.
+   */
+
+  private long replay(Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    CRC32C check = new CRC32C();
+    while (buffer.remaining() >= RECORD_HEADER) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int expected = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        return start;
+      }
+      check.reset();
+      check.update(buffer.array(), buffer.position(), length);
+      if ((int) check.getValue() != expected) {
+        return start;
+      }
+      ByteBuffer record = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(buffer.position() + length);
+      switch (record.get()) {
+        case OP_ARTICLE -> warehouse.replayArticle(record.getInt(), getString(record), getString(record),
+            record.getDouble(), record.getDouble(), record.getInt(), record.getInt(), record.getInt());
+        case OP_DELETE -> warehouse.replayDelete(record.getInt());
+        case OP_UNITS -> warehouse.replayUnits(record.getInt(), record.getInt());
+        default -> {
+          return start;
+        }
+      }
+    }
+    return buffer.position();
+  }
+
+  private List<Path> segments() throws IOException {
+    List<Path> segments = new ArrayList<Path>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : stream) {
+        segments.add(file);
+      }
+    }
+    segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+    return segments;
+  }
+
+  private static long segmentNumber(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private void openSegment(long number) throws IOException {
+    segmentNumber = number;
+    segment = FileChannel.open(directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX)),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    segmentSize = segment.size();
+  }
+
+  /**
+   * Añade un registro con el estado completo del artículo.
+   *
+   * @param article   Artículo dado de alta o modificado.
+   */
+
+  private void appendArticle(Article article) {
+    byte[] name = article.getName().getBytes(StandardCharsets.UTF_8);
+    byte[] brand = article.getBrand().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = begin(1 + 4 + 4 + name.length + 4 + brand.length + 16 + 12);
+    record.put(OP_ARTICLE).putInt(article.getCode());
+    record.putInt(name.length).put(name);
+    record.putInt(brand.length).put(brand);
+    record.putDouble(article.getBuyingPrice()).putDouble(article.getSellingPrice());
+    record.putInt(article.getUnits()).putInt(article.getSecurityStock()).putInt(article.getMaxStock());
+    end(record);
+  }
+
+  private void appendDelete(Article article) {
+    ByteBuffer record = begin(1 + 4);
+    record.put(OP_DELETE).putInt(article.getCode());
+    end(record);
+  }
+
+  private void appendUnits(Article article) {
+    ByteBuffer record = begin(1 + 4 + 4);
+    record.put(OP_UNITS).putInt(article.getCode()).putInt(article.getUnits());
+    end(record);
+  }
+
+  /**
+   * Reserva sitio para un registro en el búfer pendiente. El cerrojo queda tomado hasta {@link #end(ByteBuffer)}.
+   *
+   * @param length    Longitud del contenido del registro.
+   * @return          Búfer donde se escribe el contenido.
+   */
+
+  private ByteBuffer begin(int length) {
+    lock.lock();
+    try {
+      throwIfFailed();
+    } catch (UncheckedIOException e) {
+      lock.unlock();
+      throw e;
+    }
+    if (pending.remaining() < RECORD_HEADER + length) {
+      ByteBuffer bigger = newBuffer(Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER + length));
+      pending.flip();
+      bigger.put(pending);
+      pending = bigger;
+    }
+    recordStart = pending.position();
+    pending.putInt(length).putInt(0);
+    return pending;
+  }
+
+  /**
+   * Completa la cabecera del registro, suelta el cerrojo y apunta la posición que el hilo
+   * tendrá que sincronizar al terminar la operación.
+   *
+   * @param record    Búfer pendiente con el registro escrito.
+   */
+
+  private void end(ByteBuffer record) {
+    try {
+      int length = record.position() - recordStart - RECORD_HEADER;
+      crc.reset();
+      crc.update(record.array(), recordStart + RECORD_HEADER, length);
+      record.putInt(recordStart + 4, (int) crc.getValue());
+      appended += RECORD_HEADER + length;
+      pendingPosition.get()[0] = appended;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Espera a que todo lo añadido por el hilo actual esté sincronizado con el disco. Si ningún otro
+   * hilo está sincronizando, este hilo sincroniza también lo que hayan añadido los demás.
+   */
+
+  private void commit() {
+    long[] position = pendingPosition.get();
+    if (position[0] == 0) {
+      return;
+    }
+    long target = position[0];
+    position[0] = 0;
+    lock.lock();
+    try {
+      while (durable < target) {
+        throwIfFailed();
+        if (flushing) {
+          flushed.awaitUninterruptibly();
+          continue;
+        }
+        flushing = true;
+        ByteBuffer aux = writing;
+        writing = pending;
+        pending = aux;
+        long batchEnd = appended;
+        lock.unlock();
+        try {
+          write(writing);
+          segment.force(false);
+        } catch (IOException e) {
+          lock.lock();
+          failure = e;
+          flushing = false;
+          flushed.signalAll();
+          throw new UncheckedIOException("No se puede escribir el diario " + directory, e);
+        }
+        lock.lock();
+        durable = batchEnd;
+        flushing = false;
+        flushed.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (segmentSize > compactionThreshold && compacting.compareAndSet(false, true)) {
+      try {
+        compactor.execute(this::compactInBackground);
+      } catch (RejectedExecutionException e) {
+        // El diario se está cerrando
+        compacting.set(false);
+      }
+    }
+  }
+
+  private void compactInBackground() {
+    try {
+      checkpoint();
+    } catch (WarehousePersistenceException e) {
+      compactionErrorHandler.accept(e);
+    } finally {
+      compacting.set(false);
+    }
+  }
+
+  /**
+   * Escribe y sincroniza lo pendiente teniendo ya el cerrojo.
+   *
+   * @throws IOException    Si falla la escritura.
+   */
+
+  private void flushPending() throws IOException {
+    while (flushing) {
+      flushed.awaitUninterruptibly();
+    }
+    throwIfFailed();
+    write(pending);
+    segment.force(false);
+    durable = appended;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      segmentSize += segment.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private void throwIfFailed() {
+    if (failure != null) {
+      throw new UncheckedIOException("El diario " + directory + " no se puede usar tras un error de escritura", failure);
+    }
+  }
+
+  private static String getString(ByteBuffer record) {
+    byte[] bytes = new byte[record.getInt()];
+    record.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer newBuffer(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Recibe los cambios del almacén y los añade al diario.
+   */
+
+  private class Listener implements WarehouseListener {
+
+    @Override
+    public void beforeChange(int changes) {
+      throwIfFailed();
+    }
+
+    @Override
+    public void articleAdded(Article article) {
+      appendArticle(article);
+    }
+
+    @Override
+    public void articleDeleted(Article article) {
+      appendDelete(article);
+    }
+
+    @Override
+    public void articleModified(Article article) {
+      appendArticle(article);
+    }
+
+    @Override
+    public void unitsChanged(Article article, int delta) {
+      appendUnits(article);
+    }
+
+    @Override
+    public void committed() {
+      commit();
+    }
+  }
+}
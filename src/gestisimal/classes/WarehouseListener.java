@@ -0,0 +1,84 @@
+package gestisimal.classes;
+
+/**
+ * Recibe los cambios que se hacen en un almacén.
+ * Los avisos de cambio se dan mientras el almacén mantiene los cerrojos de la operación, por lo
+ * que llegan en el mismo orden en que se aplican los cambios y deben ser rápidos. El aviso
+ * {@link #committed()} se da al terminar la operación, ya sin cerrojos.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+interface WarehouseListener {
+  
+  /**
+   * Se va a cambiar el almacén desde el hilo actual. Se avisa antes de tomar ningún cerrojo y de
+   * cambiar nada, así que un observador puede impedir el cambio lanzando una excepción no
+   * comprobada, o esperar a tener sitio para los avisos que vienen. Los observadores avisados
+   * antes que él reciben igualmente {@link #committed()}.
+   * 
+   * @param changes   Número máximo de avisos de alta, baja, modificación y unidades que dará la
+   *                  operación.
+   */
+  
+  default void beforeChange(int changes) {
+  }
+  
+  /**
+   * Se ha dado de alta un artículo.
+   * 
+   * @param article   Artículo añadido.
+   */
+  
+  default void articleAdded(Article article) {
+  }
+  
+  /**
+   * Se ha dado de baja un artículo.
+   * 
+   * @param article   Artículo eliminado.
+   */
+  
+  default void articleDeleted(Article article) {
+  }
+  
+  /**
+   * Se ha modificado un artículo.
+   * 
+   * @param article   Artículo con los datos nuevos.
+   */
+  
+  default void articleModified(Article article) {
+  }
+  
+  /**
+   * Ha cambiado algún dato del artículo. Se avisa desde cada método que cambia el artículo,
+   * también cuando se cambia directamente y no a través del almacén.
+   * 
+   * @param article   Artículo que ha cambiado.
+   */
+  
+  default void articleChanged(Article article) {
+  }
+  
+  /**
+   * Han cambiado las unidades de un artículo por una entrada o salida de mercancía.
+   * 
+   * @param article   Artículo con las unidades nuevas.
+   * @param delta     Unidades que han entrado (positivo) o salido (negativo).
+   */
+  
+  default void unitsChanged(Article article, int delta) {
+  }
+  
+  /**
+   * Ha terminado una operación del almacén en el hilo actual. Cada {@link #beforeChange(int)} va
+   * seguido de este aviso, también si la operación se ha rechazado o ha fallado sin cambiar nada.
+   * Un observador añadido durante una operación no recibe ninguno de los dos avisos de esa
+   * operación.
+   */
+  
+  default void committed() {
+  }
+}
@@ -0,0 +1,455 @@
+package gestisimal.classes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import gestisimal.exceptions.ArticleIllegalArgumentException;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Servidor TCP que permite a varios clientes (lectores, terminales de venta) usar un mismo
+ * almacén. El protocolo es de líneas de texto UTF-8: cada petición es una línea con la orden y
+ * sus datos separados por {@code |}, y cada una recibe una línea de respuesta, {@code OK} con el
+ * resultado o {@code ERR} con el motivo.
+ *
+ * <pre>
+ * GET codigo                                                       OK codigo|nombre|marca|compra|venta|unidades|seguridad|maximo
+ * ADD nombre|marca|compra|venta|unidades|seguridad|maximo          OK codigo
+ * MOD codigo|nombre|marca|compra|venta|unidades|seguridad|maximo   OK
+ * INC codigo|unidades                                              OK
+ * DEC codigo|unidades                                              OK
+ * QUIT                                                             OK y cierra la conexión
+ * </pre>
+ *
+ * <p>Los errores son {@code ERR BAD_REQUEST}, {@code ERR UNKNOWN_COMMAND},
+ * {@code ERR LINE_TOO_LONG}, {@code ERR ARTICLE_REPEATED}, {@code ERR INVALID_ARGUMENT}, los
+ * motivos de {@link MovementStatus}, seguidos a veces de una explicación, y
+ * {@code ERR INTERNAL} si falla algo inesperado en el servidor.</p>
+ *
+ * <p>Cada conexión se atiende en su propio hilo, que lee y responde las peticiones en orden. Un
+ * cliente puede enviar varias peticiones seguidas sin esperar las respuestas: el servidor solo
+ * vacía el búfer de salida cuando no quedan peticiones pendientes de leer, así que un lote de
+ * peticiones cuesta una escritura en la red y no una por petición.</p>
+ *
+ * <p>Si la máquina virtual tiene hilos virtuales (Java 21 o posterior) cada conexión usa uno y
+ * el servidor admite decenas de miles de conexiones abiertas. Si no, usa hilos de plataforma con
+ * una pila pequeña, que también sirven para muchas conexiones pero ocupan más memoria.</p>
+ *
+ * <pre>
+ * java gestisimal.classes.WarehouseServer puerto [Warehouse.xml|Warehouse.bin]
+ * </pre>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseServer implements AutoCloseable {
+  /**
+   * Longitud máxima de una petición en bytes.
+   */
+  public static final int MAX_LINE = 8 * 1024;
+  private static final int BACKLOG = 4096;
+  /**
+   * Búferes de cada conexión, pensados para peticiones y respuestas cortas. El de la línea crece
+   * hasta {@link #MAX_LINE} solo si llega una petición más larga.
+   */
+  private static final int BUFFER_SIZE = 512;
+  private static final int INITIAL_LINE = 128;
+  /**
+   * Pila de los hilos de plataforma cuando no hay hilos virtuales.
+   */
+  private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+  /**
+   * Espera mínima y máxima antes de volver a aceptar conexiones tras un error.
+   */
+  private static final long MIN_ACCEPT_BACKOFF_MILLIS = 100;
+  private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+  private final Warehouse warehouse;
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor = newConnectionExecutor();
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  private final Thread acceptor;
+  private volatile boolean closed;
+
+  private WarehouseServer(Warehouse warehouse, SocketAddress address) throws IOException {
+    this.warehouse = warehouse;
+    this.serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(address, BACKLOG);
+    this.acceptor = new Thread(this::accept, "gestisimal-server-accept");
+  }
+
+  /**
+   * Arranca el servidor en un puerto de todas las interfaces de red.
+   *
+   * @param warehouse   Almacén que se sirve. Debe ser concurrente.
+   * @param port        Puerto, o 0 para uno libre cualquiera.
+   * @return            Servidor arrancado.
+   * @throws IOException    Si no se puede abrir el puerto.
+   * @throws IllegalArgumentException   Si el almacén no es concurrente.
+   */
+
+  public static WarehouseServer start(Warehouse warehouse, int port) throws IOException {
+    return start(warehouse, new InetSocketAddress(port));
+  }
+
+  /**
+   * Arranca el servidor en una dirección.
+   *
+   * @param warehouse   Almacén que se sirve. Debe ser concurrente.
+   * @param address     Dirección y puerto donde se escucha.
+   * @return            Servidor arrancado.
+   * @throws IOException    Si no se puede abrir el puerto.
+   * @throws IllegalArgumentException   Si el almacén no es concurrente.
+   */
+
+  public static WarehouseServer start(Warehouse warehouse, SocketAddress address) throws IOException {
+    if (!warehouse.isConcurrent()) {
+      throw new IllegalArgumentException("El almacén que se sirve debe ser concurrente");
+    }
+    WarehouseServer server = new WarehouseServer(warehouse, address);
+    server.acceptor.start();
+    return server;
+  }
+
+  /**
+   * Devuelve el puerto donde escucha el servidor, útil si se arrancó en el puerto 0.
+   *
+   * @return    Puerto local.
+   */
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Devuelve el número de conexiones abiertas.
+   *
+   * @return    Conexiones abiertas.
+   */
+
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  /**
+   * Deja de aceptar conexiones y cierra las abiertas. Las peticiones en curso pueden quedar sin
+   * respuesta.
+   */
+
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // Ya estaba cerrado
+    }
+    for (Socket socket : connections) {
+      closeQuietly(socket);
+    }
+    executor.shutdownNow();
+  }
+
+  private void accept() {
+    long backoff = 0;
+    while (!closed) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+        backoff = 0;
+      } catch (IOException e) {
+        if (closed) {
+          return;
+        }
+        // Un error que se repite (por ejemplo, sin descriptores libres) no debe ocupar el procesador
+        System.err.println("Error al aceptar una conexión: " + e.getMessage());
+        backoff = Math.min(Math.max(backoff * 2, MIN_ACCEPT_BACKOFF_MILLIS), MAX_ACCEPT_BACKOFF_MILLIS);
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        continue;
+      }
+      connections.add(socket);
+      try {
+        executor.execute(() -> serve(socket));
+      } catch (RejectedExecutionException e) {
+        connections.remove(socket);
+        closeQuietly(socket);
+      }
+    }
+  }
+
+  /**
+   * Atiende una conexión hasta que el cliente la cierra o envía QUIT.
+   *
+   * @param socket    Conexión del cliente.
+   */
+
+  private void serve(Socket socket) {
+    try (socket;
+        InputStream in = socket.getInputStream();
+        Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      socket.setTcpNoDelay(true);
+      LineReader reader = new LineReader(in);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int space = line.indexOf(' ');
+        String command = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+        if (command.equals("QUIT")) {
+          out.write("OK\n");
+          break;
+        }
+        out.write(reader.isTooLong() ? "ERR LINE_TOO_LONG" : handle(command, space < 0 ? "" : line.substring(space + 1)));
+        out.write('\n');
+        // Mientras el cliente tenga peticiones en camino se acumulan las respuestas
+        if (!reader.hasPending()) {
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      // El cliente ha cerrado la conexión o se ha cerrado el servidor
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  /**
+   * Ejecuta una petición.
+   *
+   * @param command   Orden de la petición en mayúsculas.
+   * @param data      Datos de la petición tras la orden, vacío si no hay.
+   * @return          Línea de respuesta sin el salto de línea.
+   */
+
+  private String handle(String command, String data) {
+    String[] args = data.isEmpty() ? new String[0] : data.split("\\|", -1);
+    try {
+      switch (command) {
+        case "GET":
+          expect(args, 1);
+          return "OK " + format(warehouse.returnArticle(parseInt(args[0])));
+        case "ADD":
+          expect(args, 7);
+          return "OK " + warehouse.addArticle(args[0], args[1], parseDouble(args[2]), parseDouble(args[3]),
+              parseInt(args[4]), parseInt(args[5]), parseInt(args[6]));
+        case "MOD":
+          expect(args, 8);
+          warehouse.modifyArticle(parseInt(args[0]), args[1], args[2], parseDouble(args[3]), parseDouble(args[4]),
+              parseInt(args[5]), parseInt(args[6]), parseInt(args[7]));
+          return "OK";
+        case "INC":
+          expect(args, 2);
+          return result(warehouse.tryIncrementUnitsOfArticle(parseInt(args[0]), parseInt(args[1])));
+        case "DEC":
+          expect(args, 2);
+          return result(warehouse.tryDecreaseUnitsOfArticle(parseInt(args[0]), parseInt(args[1])));
+        default:
+          return "ERR UNKNOWN_COMMAND " + command;
+      }
+    } catch (NumberFormatException e) {
+      return "ERR BAD_REQUEST Número no válido: " + e.getMessage();
+    } catch (IllegalArgumentException e) {
+      return "ERR BAD_REQUEST " + e.getMessage();
+    } catch (WarehouseArticleNotExistsException e) {
+      return "ERR " + MovementStatus.ARTICLE_NOT_FOUND;
+    } catch (WarehouseArticleRepeatedException e) {
+      return "ERR ARTICLE_REPEATED";
+    } catch (ArticleIllegalArgumentException e) {
+      return "ERR INVALID_ARGUMENT " + e.getMessage();
+    } catch (RuntimeException e) {
+      // La conexión sigue abierta: el error solo afecta a esta petición
+      System.err.println("Error al atender la petición " + command + ": " + e);
+      return "ERR INTERNAL";
+    }
+  }
+
+  private static void expect(String[] args, int count) {
+    if (args.length != count) {
+      throw new IllegalArgumentException("Se esperaban " + count + " datos y hay " + args.length);
+    }
+  }
+
+  private static int parseInt(String value) {
+    return Integer.parseInt(value.trim());
+  }
+
+  private static double parseDouble(String value) {
+    return Double.parseDouble(value.trim());
+  }
+
+  private static String result(MovementStatus status) {
+    return status == MovementStatus.OK ? "OK" : "ERR " + status;
+  }
+
+  private static String format(Article article) {
+    Article copy = article.copy();
+    return copy.getCode() + "|" + copy.getName() + "|" + copy.getBrand() + "|" + copy.getBuyingPrice() + "|"
+        + copy.getSellingPrice() + "|" + copy.getUnits() + "|" + copy.getSecurityStock() + "|" + copy.getMaxStock();
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Ya estaba cerrado
+    }
+  }
+
+  /**
+   * Crea el ejecutor de las conexiones: un hilo virtual por conexión si la máquina virtual los
+   * tiene, o hilos de plataforma con una pila pequeña si no. Los hilos virtuales se buscan por
+   * reflexión para que el programa siga compilando y funcionando en Java 17.
+   *
+   * @return    Ejecutor de las conexiones.
+   */
+
+  private static ExecutorService newConnectionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(null, task, "gestisimal-server-" + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Lee líneas UTF-8 de la conexión con un búfer propio. Las líneas de más de {@link #MAX_LINE}
+   * bytes se descartan hasta su final; el búfer de la línea empieza pequeño y crece a medida que
+   * llegan líneas más largas.
+   */
+
+  private static final class LineReader {
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] line = new byte[INITIAL_LINE];
+    private boolean tooLong;
+
+    LineReader(InputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * Lee la siguiente línea sin el salto de línea.
+     *
+     * @return    Línea leída, vacía si era demasiado larga, o null al final de la conexión.
+     * @throws IOException    Si falla la lectura.
+     */
+
+    String readLine() throws IOException {
+      int length = 0;
+      tooLong = false;
+      while (true) {
+        if (position == limit) {
+          limit = in.read(buffer);
+          position = 0;
+          if (limit < 0) {
+            limit = 0;
+            if (length == 0 && !tooLong) {
+              return null;
+            }
+            break;
+          }
+        }
+        byte b = buffer[position++];
+        if (b == '\n') {
+          break;
+        }
+        if (length < MAX_LINE) {
+          if (length == line.length) {
+            line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE));
+          }
+          line[length++] = b;
+        } else {
+          tooLong = true;
+        }
+      }
+      if (tooLong) {
+        return "";
+      }
+      if (length > 0 && line[length - 1] == '\r') {
+        length--;
+      }
+      return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    boolean isTooLong() {
+      return tooLong;
+    }
+
+    /**
+     * Indica si el cliente ya ha enviado más peticiones, leídas o no.
+     *
+     * @return    Si hay bytes pendientes de procesar.
+     * @throws IOException    Si falla la consulta.
+     */
+
+    boolean hasPending() throws IOException {
+      return position < limit || in.available() > 0;
+    }
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Uso: WarehouseServer <puerto> [almacen.xml|almacen.bin]");
+      System.exit(2);
+    }
+    try {
+      Warehouse warehouse;
+      if (args.length == 1) {
+        warehouse = new Warehouse(true);
+      } else if (args[1].endsWith(".bin")) {
+        warehouse = Warehouse.loadBinary(args[1], true);
+      } else {
+        warehouse = new Warehouse(args[1], true);
+      }
+      WarehouseServer server = start(warehouse, Integer.parseInt(args[0]));
+      System.out.println("Servidor del almacén escuchando en el puerto " + server.getPort());
+      if (args.length == 2) {
+        String route = args[1];
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          server.close();
+          try {
+            if (route.endsWith(".bin")) {
+              warehouse.saveBinary(route);
+            } else {
+              warehouse.save(route);
+            }
+          } catch (WarehousePersistenceException e) {
+            System.err.println("ERROR: " + e.getMessage());
+          }
+        }));
+      }
+    } catch (WarehousePersistenceException | IOException | NumberFormatException e) {
+      System.err.println("ERROR: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package gestisimal.classes;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import gestisimal.exceptions.WarehouseArticleNotExistsException;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Vista de solo lectura de un almacén tal como estaba en el momento de abrirla. Mientras está
+ * abierta, el almacén sigue admitiendo entradas, salidas, altas, bajas y modificaciones sin
+ * esperar a quien la lee.
+ *
+ * <p>La vista no copia el almacén al abrirse. La primera vez que cambia un artículo después de
+ * abrirla se guarda una copia del artículo tal como estaba (su imagen anterior); al leer la
+ * vista se usa esa copia y, para los artículos que no han cambiado, una copia del artículo
+ * actual. Los artículos dados de alta después no aparecen y los dados de baja siguen apareciendo.
+ * Así el coste de una vista depende de cuántos artículos cambian mientras está abierta.</p>
+ *
+ * <p>Los artículos que devuelve son copias independientes del almacén. Hay que cerrar la vista
+ * al terminar para que el almacén deje de guardar imágenes anteriores.</p>
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseSnapshot implements Iterable<Article>, AutoCloseable {
+  private final Warehouse warehouse;
+  private final long version;
+  private final int nextCode;
+  /**
+   * Imagen anterior de los artículos que han cambiado o se han dado de baja desde que se abrió.
+   */
+  private final Map<Integer, Article> preImages = new ConcurrentHashMap<Integer, Article>();
+  private volatile boolean closed;
+
+  WarehouseSnapshot(Warehouse warehouse, long version, int nextCode) {
+    this.warehouse = warehouse;
+    this.version = version;
+    this.nextCode = nextCode;
+  }
+
+  /**
+   * Devuelve la versión del almacén que muestra la vista. Cada vista abierta después tiene una
+   * versión mayor.
+   *
+   * @return    Versión de la vista.
+   */
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Devuelve un artículo tal como estaba al abrir la vista.
+   *
+   * @param code    Código del artículo.
+   * @return        Copia del artículo.
+   * @throws WarehouseArticleNotExistsException     Si el artículo no existía al abrir la vista.
+   */
+
+  public Article returnArticle(int code) throws WarehouseArticleNotExistsException {
+    throwExceptionIfClosed();
+    Article article = warehouse.findArticle(code);
+    Article found = article != null ? read(article) : preImages.get(code);
+    if (found == null) {
+      throw new WarehouseArticleNotExistsException("El articulo no existe", false);
+    }
+    return found;
+  }
+
+  /**
+   * Recorre los artículos tal como estaban al abrir la vista. Cada artículo es una copia.
+   *
+   * @return    Iterador de los artículos de la vista.
+   */
+
+  @Override
+  public Iterator<Article> iterator() {
+    throwExceptionIfClosed();
+    return new SnapshotIterator();
+  }
+
+  /**
+   * Escribe el listado de la vista, un artículo por línea, directamente en el destino.
+   *
+   * @param out     Destino del listado.
+   * @throws IOException    Si falla la escritura.
+   */
+
+  public void writeTo(Appendable out) throws IOException {
+    for (Article article : this) {
+      article.appendTo(out);
+      out.append(System.lineSeparator());
+    }
+  }
+
+  /**
+   * Guarda la vista en un fichero XML con el mismo formato que {@link Warehouse#save(String)}.
+   *
+   * @param fileName    Ruta del fichero XML.
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+
+  public void save(String fileName) throws WarehousePersistenceException {
+    WarehouseXmlWriter.write(fileName, this, nextCode);
+  }
+
+  /**
+   * Guarda la vista en una instantánea binaria con el mismo formato que
+   * {@link Warehouse#saveBinary(String)}.
+   *
+   * @param fileName    Ruta del fichero binario.
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+
+  public void saveBinary(String fileName) throws WarehousePersistenceException {
+    WarehouseBinarySnapshot.write(fileName, this, nextCode);
+  }
+
+  /**
+   * Cierra la vista. El almacén deja de guardar imágenes anteriores para ella.
+   */
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      warehouse.closeSnapshot(this);
+      preImages.clear();
+    }
+  }
+
+  /**
+   * Guarda la imagen anterior del artículo si es el primer cambio desde que se abrió la vista.
+   * Se llama con el artículo bloqueado y antes de cambiarlo.
+   *
+   * @param article   Artículo que va a cambiar.
+   */
+
+  void preserve(Article article) {
+    if (article.getAddedVersion() < version && !preImages.containsKey(article.getCode())) {
+      preImages.putIfAbsent(article.getCode(), article.copy());
+    }
+  }
+
+  /**
+   * Lee un artículo del almacén tal como estaba al abrir la vista.
+   *
+   * @param article   Artículo del almacén.
+   * @return          Copia del artículo o null si se dio de alta después.
+   */
+
+  private Article read(Article article) {
+    if (article.getAddedVersion() >= version) {
+      return null;
+    }
+    synchronized (article) {
+      Article preImage = preImages.get(article.getCode());
+      return preImage != null ? preImage : article.copy();
+    }
+  }
+
+  private void throwExceptionIfClosed() {
+    if (closed) {
+      throw new IllegalStateException("La vista del almacen esta cerrada");
+    }
+  }
+
+  /**
+   * Recorre primero los artículos del almacén y después las imágenes anteriores de los que se han
+   * dado de baja y no han salido ya en el recorrido.
+   */
+
+  private class SnapshotIterator implements Iterator<Article> {
+    private final Iterator<Article> live = warehouse.articles().iterator();
+    private final BitSet returned = new BitSet();
+    private Iterator<Article> deleted;
+    private Article next;
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (live.hasNext()) {
+          next = read(live.next());
+          if (next != null) {
+            returned.set(next.getCode());
+          }
+        } else {
+          if (deleted == null) {
+            deleted = preImages.values().iterator();
+          }
+          if (!deleted.hasNext()) {
+            return false;
+          }
+          Article preImage = deleted.next();
+          if (!returned.get(preImage.getCode())) {
+            next = preImage;
+          }
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Article next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Article article = next;
+      next = null;
+      return article;
+    }
+  }
+}
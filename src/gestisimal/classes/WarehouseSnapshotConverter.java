@@ -0,0 +1,61 @@
+package gestisimal.classes;
+
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Convierte los ficheros del almacén entre el formato XML y la instantánea binaria.
+ * 
+ * <pre>
+ * java gestisimal.classes.WarehouseSnapshotConverter xml2bin Warehouse.xml Warehouse.bin
+ * java gestisimal.classes.WarehouseSnapshotConverter bin2xml Warehouse.bin Warehouse.xml
+ * </pre>
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class WarehouseSnapshotConverter {
+  
+  private WarehouseSnapshotConverter() {
+  }
+  
+  /**
+   * Convierte un fichero XML en una instantánea binaria.
+   * 
+   * @param xmlRoute      Ruta del fichero XML de origen.
+   * @param binaryRoute   Ruta de la instantánea binaria de destino.
+   * @throws WarehousePersistenceException    Si no se puede leer el origen o escribir el destino.
+   */
+  
+  public static void xmlToBinary(String xmlRoute, String binaryRoute) throws WarehousePersistenceException {
+    new Warehouse(xmlRoute).saveBinary(binaryRoute);
+  }
+  
+  /**
+   * Convierte una instantánea binaria en un fichero XML.
+   * 
+   * @param binaryRoute   Ruta de la instantánea binaria de origen.
+   * @param xmlRoute      Ruta del fichero XML de destino.
+   * @throws WarehousePersistenceException    Si no se puede leer el origen o escribir el destino.
+   */
+  
+  public static void binaryToXml(String binaryRoute, String xmlRoute) throws WarehousePersistenceException {
+    Warehouse.loadBinary(binaryRoute).save(xmlRoute);
+  }
+  
+  public static void main(String[] args) {
+    if (args.length != 3 || !(args[0].equals("xml2bin") || args[0].equals("bin2xml"))) {
+      System.err.println("Uso: WarehouseSnapshotConverter xml2bin|bin2xml <origen> <destino>");
+      System.exit(2);
+    }
+    try {
+      if (args[0].equals("xml2bin")) {
+        xmlToBinary(args[1], args[2]);
+      } else {
+        binaryToXml(args[1], args[2]);
+      }
+    } catch (WarehousePersistenceException e) {
+      System.exit(1);
+    }
+  }
+}
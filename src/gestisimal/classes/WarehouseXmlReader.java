@@ -0,0 +1,199 @@
+package gestisimal.classes;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import gestisimal.exceptions.ArticleIllegalArgumentException;
+import gestisimal.exceptions.WarehousePersistenceException;
+import gestisimal.monitoring.WarehouseLoadEvent;
+
+/**
+ * Carga un almacén desde un fichero XML recorriéndolo en una sola pasada con StAX.
+ * Cada artículo se crea en cuanto se cierra su elemento, por lo que la memoria extra
+ * no depende del tamaño del fichero.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+class WarehouseXmlReader {
+  private static final XMLInputFactory FACTORY = createFactory();
+  
+  private WarehouseXmlReader() {
+  }
+  
+  /**
+   * Lee el fichero y añade sus artículos al almacén.
+   * 
+   * @param route         Ruta del fichero XML.
+   * @param warehouse     Almacén donde se cargan los artículos.
+   * @throws WarehousePersistenceException    Si no se puede leer el fichero o no es válido.
+   */
+  
+  static void read(String route, Warehouse warehouse) throws WarehousePersistenceException {
+    WarehouseLoadEvent event = new WarehouseLoadEvent();
+    event.begin();
+    int count = -1;
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(Path.of(route)))) {
+      XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+      try {
+        count = read(reader, warehouse);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new WarehousePersistenceException("El fichero " + route + " no es un XML válido: " + e.getMessage(), e);
+    } catch (IOException e) {
+      throw new WarehousePersistenceException("No se puede leer el fichero " + route, e);
+    } finally {
+      if (event.shouldCommit()) {
+        event.file = route;
+        event.format = "xml";
+        event.articleCount = Math.max(count, 0);
+        event.bytesRead = fileSize(route);
+        event.succeeded = count >= 0;
+        event.commit();
+      }
+    }
+  }
+  
+  private static long fileSize(String route) {
+    try {
+      return Files.size(Path.of(route));
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+  
+  /**
+   * Recorre los eventos del documento construyendo los artículos.
+   * 
+   * @param reader        Lector StAX del documento.
+   * @param warehouse     Almacén donde se cargan los artículos.
+   * @return              Número de artículos cargados.
+   * @throws XMLStreamException               Si el documento está mal formado.
+   * @throws WarehousePersistenceException    Si falta algún dato o no es válido.
+   */
+  
+  private static int read(XMLStreamReader reader, Warehouse warehouse) throws XMLStreamException, WarehousePersistenceException {
+    int count = 0;
+    String code = null;
+    String name = null;
+    String brand = null;
+    String buyingPrice = null;
+    String sellingPrice = null;
+    String units = null;
+    String securityStock = null;
+    String maxStock = null;
+    boolean inArticle = false;
+    
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        String element = reader.getLocalName();
+        if (!inArticle) {
+          if (element.equals("Warehouse")) {
+            String nextCode = reader.getAttributeValue(null, "NextCode");
+            if (nextCode != null) {
+              warehouse.advanceCodesTo(parseInt("NextCode", nextCode, reader.getLocation()));
+            }
+          } else if (element.equals("Article")) {
+            inArticle = true;
+            code = reader.getAttributeValue(null, "Code");
+            name = brand = buyingPrice = sellingPrice = units = securityStock = maxStock = null;
+          }
+          continue;
+        }
+        switch (element) {
+          case "Name" -> name = reader.getElementText();
+          case "Brand" -> brand = reader.getElementText();
+          case "BuyingPrice" -> buyingPrice = reader.getElementText();
+          case "SellingPrice" -> sellingPrice = reader.getElementText();
+          case "Units" -> units = reader.getElementText();
+          case "SecurityStock" -> securityStock = reader.getElementText();
+          case "MaxStock" -> maxStock = reader.getElementText();
+          default -> reader.getElementText();
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT && inArticle && reader.getLocalName().equals("Article")) {
+        inArticle = false;
+        Location location = reader.getLocation();
+        try {
+          boolean added = warehouse.restoreArticle(
+              code == null ? -1 : parseInt("Code", code, location),
+              required("Name", name, location),
+              required("Brand", brand, location),
+              parseDouble("BuyingPrice", buyingPrice, location),
+              parseDouble("SellingPrice", sellingPrice, location),
+              parseInt("Units", units, location),
+              parseInt("SecurityStock", securityStock, location),
+              parseInt("MaxStock", maxStock, location));
+          if (!added) {
+            throw error("Artículo repetido (código " + code + ", nombre " + name + ", marca " + brand + ")", location);
+          }
+          count++;
+        } catch (ArticleIllegalArgumentException e) {
+          throw error(e.getMessage(), location);
+        }
+      }
+    }
+    return count;
+  }
+  
+  /**
+   * Comprueba que el dato del artículo existe.
+   * 
+   * @param field       Nombre del elemento.
+   * @param value       Valor leído o null si no aparecía.
+   * @param location    Posición en el fichero.
+   * @return            El valor leído.
+   * @throws WarehousePersistenceException    Si no aparecía el dato.
+   */
+  
+  private static String required(String field, String value, Location location) throws WarehousePersistenceException {
+    if (value == null) {
+      throw error("Falta el elemento " + field + " del artículo", location);
+    }
+    return value.trim();
+  }
+  
+  private static int parseInt(String field, String value, Location location) throws WarehousePersistenceException {
+    try {
+      return Integer.parseInt(required(field, value, location));
+    } catch (NumberFormatException e) {
+      throw error("El valor de " + field + " no es un entero: " + value, location);
+    }
+  }
+  
+  private static double parseDouble(String field, String value, Location location) throws WarehousePersistenceException {
+    try {
+      return Double.parseDouble(required(field, value, location));
+    } catch (NumberFormatException e) {
+      throw error("El valor de " + field + " no es un número: " + value, location);
+    }
+  }
+  
+  private static WarehousePersistenceException error(String msg, Location location) {
+    return new WarehousePersistenceException(msg + " (línea " + location.getLineNumber() + ")");
+  }
+  
+  /**
+   * Crea la factoría de lectores StAX sin DTD ni entidades externas.
+   * 
+   * @return    Factoría de lectores.
+   */
+  
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+}
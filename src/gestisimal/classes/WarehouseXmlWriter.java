@@ -0,0 +1,100 @@
+package gestisimal.classes;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import gestisimal.exceptions.WarehousePersistenceException;
+import gestisimal.monitoring.WarehouseSaveEvent;
+
+/**
+ * Guarda un almacén en un fichero XML escribiendo los artículos directamente en un flujo con búfer.
+ * Se escribe primero en un fichero temporal del mismo directorio que después se renombra al
+ * destino, así una caída durante el guardado nunca deja el fichero a medias.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+class WarehouseXmlWriter {
+  private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+  private static final int BUFFER_SIZE = 64 * 1024;
+  
+  private WarehouseXmlWriter() {
+  }
+  
+  /**
+   * Escribe los artículos en el fichero indicado.
+   * 
+   * @param fileName    Ruta del fichero XML.
+   * @param articles    Artículos a guardar.
+   * @param nextCode    Marca de agua del repartidor de códigos.
+   * @throws WarehousePersistenceException    Si no se puede escribir el fichero.
+   */
+  
+  static void write(String fileName, Iterable<Article> articles, int nextCode) throws WarehousePersistenceException {
+    WarehouseSaveEvent event = new WarehouseSaveEvent();
+    event.begin();
+    int[] count = new int[1];
+    long bytes = -1;
+    try {
+      bytes = SnapshotFiles.writeAtomically(Path.of(fileName), channel -> {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        XMLStreamWriter writer = FACTORY.createXMLStreamWriter(out, "UTF-8");
+        count[0] = write(writer, articles, nextCode);
+        writer.close();
+        out.flush();
+      });
+    } catch (Exception e) {
+      throw new WarehousePersistenceException("No se puede guardar el almacen en " + fileName, e);
+    } finally {
+      SnapshotFiles.commit(event, fileName, "xml", count[0], bytes);
+    }
+  }
+  
+  /**
+   * Escribe el documento con el mismo esquema que lee {@link WarehouseXmlReader}.
+   * 
+   * @param writer      Escritor StAX.
+   * @param articles    Artículos a guardar.
+   * @param nextCode    Marca de agua del repartidor de códigos.
+   * @return            Número de artículos escritos.
+   * @throws XMLStreamException   Si falla la escritura.
+   */
+  
+  private static int write(XMLStreamWriter writer, Iterable<Article> articles, int nextCode) throws XMLStreamException {
+    int count = 0;
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.writeStartElement("Warehouse");
+    writer.writeAttribute("NextCode", Integer.toString(nextCode));
+    for (Article art : articles) {
+      synchronized (art) {
+        writer.writeCharacters("\n");
+        writer.writeStartElement("Article");
+        writer.writeAttribute("Code", Integer.toString(art.getCode()));
+        writeElement(writer, "Name", art.getName());
+        writeElement(writer, "Brand", art.getBrand());
+        writeElement(writer, "BuyingPrice", Double.toString(art.getBuyingPrice()));
+        writeElement(writer, "SellingPrice", Double.toString(art.getSellingPrice()));
+        writeElement(writer, "Units", Integer.toString(art.getUnits()));
+        writeElement(writer, "SecurityStock", Integer.toString(art.getSecurityStock()));
+        writeElement(writer, "MaxStock", Integer.toString(art.getMaxStock()));
+        writer.writeEndElement();
+      }
+      count++;
+    }
+    writer.writeCharacters("\n");
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    return count;
+  }
+  
+  private static void writeElement(XMLStreamWriter writer, String element, String value) throws XMLStreamException {
+    writer.writeStartElement(element);
+    writer.writeCharacters(value);
+    writer.writeEndElement();
+  }
+}
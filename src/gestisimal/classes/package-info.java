@@ -1,8 +1,8 @@
-/**
- * Suministra las clases principales del programa.
- * 
- * @author Quique Ruz Del Río
- * 
- */
-
-package gestisimal.classes;
+/**
+ * Suministra las clases principales del programa.
+ * 
+ * @author Quique Ruz Del Río
+ * 
+ */
+
+package gestisimal.classes;
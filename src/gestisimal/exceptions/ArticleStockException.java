@@ -1,11 +1,15 @@
-package gestisimal.exceptions;
-
-public class ArticleStockException extends Exception {
-
-  private static final long serialVersionUID = 1L;
-
-  public ArticleStockException(String msg) {
-    super(msg);
-    System.err.println(msg);
-  }
-}
+package gestisimal.exceptions;
+
+public class ArticleStockException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public ArticleStockException(String msg) {
+    super(msg);
+    System.err.println(msg);
+  }
+
+  public ArticleStockException(String msg, boolean writableStackTrace) {
+    super(msg, null, false, writableStackTrace);
+  }
+}
@@ -1,11 +1,15 @@
-package gestisimal.exceptions;
-
-public class WarehouseArticleNotExistsException extends Exception {
-
-  private static final long serialVersionUID = 1L;
-
-  public WarehouseArticleNotExistsException(String msg) {
-    super(msg);
-    System.err.println(msg);
-  }
-}
+package gestisimal.exceptions;
+
+public class WarehouseArticleNotExistsException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public WarehouseArticleNotExistsException(String msg) {
+    super(msg);
+    System.err.println(msg);
+  }
+
+  public WarehouseArticleNotExistsException(String msg, boolean writableStackTrace) {
+    super(msg, null, false, writableStackTrace);
+  }
+}
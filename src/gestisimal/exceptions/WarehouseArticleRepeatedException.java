@@ -1,11 +1,15 @@
-package gestisimal.exceptions;
-
-public class WarehouseArticleRepeatedException extends Exception {
-
-  private static final long serialVersionUID = 1L;
-
-  public WarehouseArticleRepeatedException(String msg) {
-    super(msg);
-    System.err.println(msg);
-  }
-}
+package gestisimal.exceptions;
+
+public class WarehouseArticleRepeatedException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public WarehouseArticleRepeatedException(String msg) {
+    super(msg);
+    System.err.println(msg);
+  }
+
+  public WarehouseArticleRepeatedException(String msg, boolean writableStackTrace) {
+    super(msg, null, false, writableStackTrace);
+  }
+}
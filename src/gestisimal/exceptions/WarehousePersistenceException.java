@@ -0,0 +1,16 @@
+package gestisimal.exceptions;
+
+public class WarehousePersistenceException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  public WarehousePersistenceException(String msg) {
+    super(msg);
+    System.err.println(msg);
+  }
+
+  public WarehousePersistenceException(String msg, Throwable cause) {
+    super(msg, cause);
+    System.err.println(msg);
+  }
+}
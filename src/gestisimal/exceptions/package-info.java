@@ -1,8 +1,8 @@
-/**
- * Suministra las excepciones necesarias a las clases.
- * 
- * @author Quique Ruz Del Río
- * 
- */
-
-package gestisimal.exceptions;
+/**
+ * Suministra las excepciones necesarias a las clases.
+ * 
+ * @author Quique Ruz Del Río
+ * 
+ */
+
+package gestisimal.exceptions;
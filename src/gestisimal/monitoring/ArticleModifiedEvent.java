@@ -0,0 +1,30 @@
+package gestisimal.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de Java Flight Recorder de cada modificación de un artículo. Su duración incluye la
+ * espera por los cerrojos del catálogo y del artículo.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@Name("gestisimal.ArticleModified")
+@Label("Article Modified")
+@Category({"Gestisimal", "Stock"})
+@Description("Modificación de un artículo del almacén")
+public class ArticleModifiedEvent extends jdk.jfr.Event {
+  @Label("Article Code")
+  public int articleCode;
+
+  @Label("Article Count")
+  @Description("Artículos del almacén al terminar")
+  public int articleCount;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+}
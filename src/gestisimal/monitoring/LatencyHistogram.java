@@ -0,0 +1,137 @@
+package gestisimal.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en nanosegundos. Cada potencia de dos se reparte en
+ * {@value #SUB_BUCKETS} cubos iguales, así que los percentiles tienen un error relativo menor del
+ * 12,5 % con cualquier valor y el histograma ocupa siempre lo mismo.
+ *
+ * <p>Registrar un valor no usa cerrojos ni crea objetos: solo incrementa contadores atómicos. Las
+ * lecturas no son una foto exacta si se registra a la vez, pero sí lo bastante para
+ * monitorizar.</p>
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Registra una latencia.
+   * 
+   * @param nanos   Latencia en nanosegundos. Los valores negativos cuentan como cero.
+   */
+  
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    buckets.incrementAndGet(bucket(value));
+    count.increment();
+    total.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Devuelve el número de latencias registradas.
+   * 
+   * @return    Número de latencias.
+   */
+  
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Devuelve la latencia media.
+   * 
+   * @return    Media en nanosegundos, o cero si no hay ninguna.
+   */
+  
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) total.sum() / n;
+  }
+
+  /**
+   * Devuelve la mayor latencia registrada.
+   * 
+   * @return    Máximo en nanosegundos.
+   */
+  
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Devuelve el percentil indicado: el límite superior del cubo en el que cae.
+   * 
+   * @param percentile    Percentil entre 0 y 100.
+   * @return              Latencia en nanosegundos, o cero si no hay ninguna.
+   */
+  
+  public long getPercentile(double percentile) {
+    long[] counts = new long[BUCKETS];
+    long n = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      n += counts[i];
+    }
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Pone el histograma a cero.
+   */
+  
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.reset();
+    total.reset();
+    max.reset();
+  }
+
+  /**
+   * Cubo de un valor: los valores pequeños tienen cubo propio y el resto va al subcubo de su
+   * potencia de dos que le corresponde por sus bits siguientes al más alto.
+   */
+  
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long sub = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+}
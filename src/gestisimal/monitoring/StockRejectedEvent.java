@@ -0,0 +1,35 @@
+package gestisimal.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de Java Flight Recorder de cada salida de mercancía rechazada. Es instantáneo y no
+ * guarda la pila, porque las salidas rechazadas pueden ser muy frecuentes.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@Name("gestisimal.StockRejected")
+@Label("Stock Decrease Rejected")
+@Category({"Gestisimal", "Stock"})
+@Description("Salida de mercancía rechazada")
+@StackTrace(false)
+public class StockRejectedEvent extends jdk.jfr.Event {
+  @Label("Article Code")
+  public int articleCode;
+
+  @Label("Requested Units")
+  public int requestedUnits;
+
+  @Label("Available Units")
+  @Description("Unidades del artículo al rechazar la salida, o -1 si no existe")
+  public int availableUnits;
+
+  @Label("Reason")
+  public String reason;
+}
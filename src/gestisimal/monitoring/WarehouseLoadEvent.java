@@ -0,0 +1,36 @@
+package gestisimal.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de Java Flight Recorder de cada carga del almacén desde un fichero, XML o binario.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@Name("gestisimal.WarehouseLoad")
+@Label("Warehouse Load")
+@Category({"Gestisimal", "Persistence"})
+@Description("Carga del almacén desde un fichero")
+public class WarehouseLoadEvent extends jdk.jfr.Event {
+  @Label("File")
+  public String file;
+
+  @Label("Format")
+  public String format;
+
+  @Label("Article Count")
+  public int articleCount;
+
+  @Label("Bytes Read")
+  @DataAmount
+  public long bytesRead;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+}
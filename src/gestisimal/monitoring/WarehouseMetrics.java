@@ -0,0 +1,188 @@
+package gestisimal.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de las operaciones de un almacén: llamadas, errores por tipo de excepción e histograma
+ * de latencias de cada operación. Registrar una operación no usa cerrojos ni crea objetos (salvo
+ * la primera vez que aparece un tipo de excepción), así que las métricas pueden estar siempre
+ * activas.
+ *
+ * <p>Se publican en el servidor de MBeans de la plataforma con {@link #register(String)}, con el
+ * nombre {@code gestisimal:type=Warehouse,name=<nombre>}.</p>
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public final class WarehouseMetrics implements WarehouseMetricsMXBean {
+  private static final WarehouseOperation[] OPERATIONS = WarehouseOperation.values();
+
+  private final Stats[] stats = new Stats[OPERATIONS.length];
+  private volatile ObjectName objectName;
+
+  public WarehouseMetrics() {
+    for (int i = 0; i < OPERATIONS.length; i++) {
+      stats[i] = new Stats();
+    }
+  }
+
+  /**
+   * Marca el comienzo de una operación.
+   * 
+   * @return    Instante de comienzo, para pasarlo al terminar.
+   */
+  
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Registra una operación que ha terminado bien.
+   * 
+   * @param operation   Operación.
+   * @param start       Instante devuelto por {@link #start()}.
+   */
+  
+  public void succeeded(WarehouseOperation operation, long start) {
+    Stats aux = stats[operation.ordinal()];
+    aux.latency.record(System.nanoTime() - start);
+    aux.calls.increment();
+  }
+
+  /**
+   * Registra una operación que ha terminado con error.
+   * 
+   * @param operation   Operación.
+   * @param start       Instante devuelto por {@link #start()}.
+   * @param error       Tipo de la excepción del error.
+   */
+  
+  public void failed(WarehouseOperation operation, long start, Class<? extends Throwable> error) {
+    succeeded(operation, start);
+    Map<Class<?>, LongAdder> counts = stats[operation.ordinal()].errors;
+    LongAdder count = counts.get(error);
+    if (count == null) {
+      count = counts.computeIfAbsent(error, e -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  /**
+   * Devuelve el histograma de latencias de una operación.
+   * 
+   * @param operation   Operación.
+   * @return            Histograma de la operación.
+   */
+  
+  public LatencyHistogram getLatency(WarehouseOperation operation) {
+    return stats[operation.ordinal()].latency;
+  }
+
+  /**
+   * Publica las métricas en el servidor de MBeans de la plataforma.
+   * 
+   * @param name    Nombre que distingue a este almacén de otros.
+   * @return        Nombre con el que se ha registrado el MBean.
+   * @throws JMException    Si el nombre no es válido o ya está registrado.
+   */
+  
+  public synchronized ObjectName register(String name) throws JMException {
+    ObjectName aux = new ObjectName("gestisimal:type=Warehouse,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, aux);
+    objectName = aux;
+    return aux;
+  }
+
+  /**
+   * Retira las métricas del servidor de MBeans si estaban publicadas.
+   * 
+   * @throws JMException    Si no se puede retirar.
+   */
+  
+  public synchronized void unregister() throws JMException {
+    if (objectName != null) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      objectName = null;
+    }
+  }
+
+  @Override
+  public Map<String, Long> getOperationCounts() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (WarehouseOperation operation : OPERATIONS) {
+      result.put(operation.name(), stats[operation.ordinal()].calls.sum());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getErrorCounts() {
+    Map<String, Long> result = new TreeMap<String, Long>();
+    for (WarehouseOperation operation : OPERATIONS) {
+      for (Map.Entry<Class<?>, LongAdder> entry : stats[operation.ordinal()].errors.entrySet()) {
+        result.put(operation.name() + "/" + entry.getKey().getSimpleName(), entry.getValue().sum());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getMeanLatencyMicros() {
+    return latencies(LatencyHistogram::getMean);
+  }
+
+  @Override
+  public Map<String, Double> getP50LatencyMicros() {
+    return latencies(h -> h.getPercentile(50));
+  }
+
+  @Override
+  public Map<String, Double> getP99LatencyMicros() {
+    return latencies(h -> h.getPercentile(99));
+  }
+
+  @Override
+  public Map<String, Double> getP999LatencyMicros() {
+    return latencies(h -> h.getPercentile(99.9));
+  }
+
+  @Override
+  public Map<String, Double> getMaxLatencyMicros() {
+    return latencies(LatencyHistogram::getMax);
+  }
+
+  @Override
+  public void reset() {
+    for (Stats aux : stats) {
+      aux.calls.reset();
+      aux.latency.reset();
+      aux.errors.clear();
+    }
+  }
+
+  private Map<String, Double> latencies(ToDoubleFunction<LatencyHistogram> nanos) {
+    Map<String, Double> result = new TreeMap<String, Double>();
+    for (WarehouseOperation operation : OPERATIONS) {
+      result.put(operation.name(), nanos.applyAsDouble(stats[operation.ordinal()].latency) / 1000.0);
+    }
+    return result;
+  }
+
+  /**
+   * Métricas de una operación.
+   */
+
+  private static final class Stats {
+    private final LongAdder calls = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<Class<?>, LongAdder> errors = new ConcurrentHashMap<Class<?>, LongAdder>();
+  }
+}
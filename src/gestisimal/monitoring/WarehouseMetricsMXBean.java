@@ -0,0 +1,43 @@
+package gestisimal.monitoring;
+
+import java.util.Map;
+
+/**
+ * Métricas de un almacén publicadas por JMX. Cada mapa tiene una entrada por operación, con el
+ * nombre de {@link WarehouseOperation}; las latencias están en microsegundos.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public interface WarehouseMetricsMXBean {
+
+  /**
+   * @return    Número de llamadas de cada operación, con éxito o con error.
+   */
+  
+  Map<String, Long> getOperationCounts();
+
+  /**
+   * @return    Número de errores de cada operación y tipo de excepción, con claves
+   *            {@code OPERACION/Excepcion}.
+   */
+  
+  Map<String, Long> getErrorCounts();
+
+  Map<String, Double> getMeanLatencyMicros();
+
+  Map<String, Double> getP50LatencyMicros();
+
+  Map<String, Double> getP99LatencyMicros();
+
+  Map<String, Double> getP999LatencyMicros();
+
+  Map<String, Double> getMaxLatencyMicros();
+
+  /**
+   * Pone todas las métricas a cero.
+   */
+  
+  void reset();
+}
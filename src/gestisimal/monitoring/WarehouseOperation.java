@@ -0,0 +1,12 @@
+package gestisimal.monitoring;
+
+/**
+ * Operaciones del almacén de las que se toman métricas.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public enum WarehouseOperation {
+  ADD, DELETE, MODIFY, INCREMENT, DECREMENT, BATCH, RETURN, SAVE, LOAD
+}
@@ -0,0 +1,37 @@
+package gestisimal.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de Java Flight Recorder de cada guardado del almacén en un fichero, XML o binario. Su
+ * duración es la del guardado completo, incluido el renombrado final del fichero.
+ * 
+ * @author Quique Ruz Del Río
+ *
+ */
+
+@Name("gestisimal.WarehouseSave")
+@Label("Warehouse Save")
+@Category({"Gestisimal", "Persistence"})
+@Description("Guardado del almacén en un fichero")
+public class WarehouseSaveEvent extends jdk.jfr.Event {
+  @Label("File")
+  public String file;
+
+  @Label("Format")
+  public String format;
+
+  @Label("Article Count")
+  public int articleCount;
+
+  @Label("Bytes Written")
+  @DataAmount
+  public long bytesWritten;
+
+  @Label("Succeeded")
+  public boolean succeeded;
+}
@@ -0,0 +1,9 @@
+/**
+ * Métricas de funcionamiento del almacén: contadores, errores y latencias de cada operación,
+ * publicadas por JMX, y eventos de Java Flight Recorder de sus operaciones más lentas o críticas.
+ * 
+ * @author Quique Ruz Del Río
+ * 
+ */
+
+package gestisimal.monitoring;
@@ -1,5 +1,6 @@
 package gestisimal.tests;
 
+import java.io.IOException;
 import java.util.Scanner;
 import gestisimal.classes.Warehouse;
 import gestisimal.exceptions.ArticleIllegalArgumentException;
@@ -61,7 +62,12 @@ public class TestWarehouse {
 
 
   private static void showWarehouse() {
-    System.out.println(warehouse);
+    try {
+      warehouse.writeTo(System.out);
+    } 
+    catch (IOException e) {
+      System.err.println("ERROR: " + e.getMessage());
+    }
   }
 
   private static void addArticle() {
@@ -102,6 +108,9 @@ Article article = warehouse.returnArticle(readInt("Código de artículo a modifi
     catch (WarehouseArticleNotExistsException e) {
       printCodeError();
     } 
+    catch (WarehouseArticleRepeatedException e) {
+      System.err.println("ERROR: Ya existe otro artículo con ese nombre y marca.");
+    } 
     catch (ArticleIllegalArgumentException e) {
       System.err.println("ERROR: " + e.getMessage());
     }
@@ -0,0 +1,92 @@
+package gestisimal.tests;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import gestisimal.classes.Warehouse;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Prueba de ida y vuelta de la instantánea binaria: guarda un almacén, lo vuelve a cargar y
+ * comprueba que tiene los mismos artículos, que no repite códigos ya repartidos y que rechaza un
+ * fichero truncado. Termina con código 1 si alguna comprobación falla.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class TestWarehouseBinarySnapshot {
+  private static int failures;
+
+  public static void main(String[] args) throws Exception {
+    Path dir = Files.createTempDirectory("gestisimal-binary");
+    try {
+      checkRoundTrip(dir.resolve("almacen.bin"));
+      checkRejectsTruncatedFile(dir.resolve("truncado.bin"));
+    } finally {
+      deleteAll(dir);
+    }
+
+    if (failures > 0) {
+      System.err.println(failures + " comprobaciones fallidas");
+      System.exit(1);
+    }
+    System.out.println("Instantánea binaria: todas las comprobaciones correctas");
+  }
+
+  private static void checkRoundTrip(Path file) throws Exception {
+    Warehouse warehouse = new Warehouse();
+    warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    warehouse.addArticle("Tuerca", "Acme", 0.05, 0.15, 50, 5, 500);
+    warehouse.addArticle("Arandela ñandú", "Peña", 0.01, 0.02, 0, 0, 0);
+    // Más larga que el búfer de escritura, para que se escriba fuera de él
+    warehouse.addArticle("x".repeat(100_000), "ñ".repeat(40_000), 1, 2, 3, 0, 10);
+    int deleted = warehouse.addArticle("Clavo", "Acme", 0.02, 0.05, 10, 0, 100);
+    warehouse.deleteArticle(deleted);
+
+    warehouse.saveBinary(file.toString());
+    Warehouse loaded = Warehouse.loadBinary(file.toString());
+
+    expect("artículos cargados", articles(warehouse), articles(loaded));
+    int next = loaded.addArticle("Clavo", "Acme", 0.02, 0.05, 10, 0, 100);
+    expect("código nuevo tras cargar", "mayor que " + deleted, next > deleted ? "mayor que " + deleted : Integer.toString(next));
+  }
+
+  private static void checkRejectsTruncatedFile(Path file) throws Exception {
+    Warehouse warehouse = new Warehouse();
+    warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    warehouse.saveBinary(file.toString());
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+    try {
+      Warehouse.loadBinary(file.toString());
+      expect("fichero truncado", "WarehousePersistenceException", "almacén cargado");
+    } catch (WarehousePersistenceException e) {
+      // Es lo esperado
+    }
+  }
+
+  private static String articles(Warehouse warehouse) {
+    return warehouse.listArticlesAfter(-1, Integer.MAX_VALUE).toString();
+  }
+
+  private static void deleteAll(Path dir) throws IOException {
+    try (var files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  private static void expect(String check, String expected, String actual) {
+    if (!Objects.equals(expected, actual)) {
+      failures++;
+      System.err.println("FALLO en " + check + ": se esperaba " + expected + " y se ha recibido " + actual);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package gestisimal.tests;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import gestisimal.classes.Warehouse;
+import gestisimal.classes.WarehouseDeltaStore;
+
+/**
+ * Prueba de ida y vuelta del guardado incremental: guarda segmentos de cambios, los fusiona en
+ * una base y comprueba que al reabrir el directorio se recupera el mismo almacén, también cuando
+ * una fusión se interrumpe antes de borrar los segmentos antiguos. Termina con código 1 si alguna
+ * comprobación falla.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class TestWarehouseDeltaStore {
+  private static int failures;
+
+  public static void main(String[] args) throws Exception {
+    Path dir = Files.createTempDirectory("gestisimal-delta");
+    try {
+      checkDeltasAndMerge(dir.resolve("incremental"));
+      checkInterruptedMerge(dir.resolve("interrumpida"));
+    } finally {
+      deleteAll(dir);
+    }
+
+    if (failures > 0) {
+      System.err.println(failures + " comprobaciones fallidas");
+      System.exit(1);
+    }
+    System.out.println("Guardado incremental: todas las comprobaciones correctas");
+  }
+
+  private static void checkDeltasAndMerge(Path dir) throws Exception {
+    WarehouseDeltaStore store = WarehouseDeltaStore.open(dir.toString(), false);
+    Warehouse warehouse = store.getWarehouse();
+    int screw = warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    int nut = warehouse.addArticle("Tuerca", "Acme", 0.05, 0.15, 50, 5, 500);
+    int washer = warehouse.addArticle("Arandela", "Peña", 0.01, 0.02, 0, 0, 0);
+    store.save();
+    expect("cambios pendientes tras guardar", "0", Integer.toString(store.pendingChanges()));
+
+    warehouse.incrementUnitsOfArticle(screw, 20);
+    warehouse.deleteArticle(washer);
+    warehouse.modifyArticle(nut, "Tuerca", "Acme", 0.06, 0.16, 40, 5, 500);
+    store.save();
+    expect("segmentos de cambios", "[delta-00000001.bin, delta-00000002.bin]", files(dir).toString());
+    String expected = articles(warehouse);
+    expect("reabrir con segmentos", expected, articles(WarehouseDeltaStore.open(dir.toString(), false).getWarehouse()));
+
+    store.merge();
+    expect("ficheros tras fusionar", "[base-00000002.bin]", files(dir).toString());
+    expect("reabrir tras fusionar", expected, articles(WarehouseDeltaStore.open(dir.toString(), false).getWarehouse()));
+
+    warehouse.decreaseUnitsOfArticle(screw, 100);
+    store.save();
+    expected = articles(warehouse);
+    WarehouseDeltaStore reopened = WarehouseDeltaStore.open(dir.toString(), false);
+    expect("reabrir con base y segmento", expected, articles(reopened.getWarehouse()));
+    int next = reopened.getWarehouse().addArticle("Clavo", "Acme", 0.02, 0.05, 10, 0, 100);
+    expect("código nuevo tras reabrir", "mayor que " + washer, next > washer ? "mayor que " + washer : Integer.toString(next));
+  }
+
+  /**
+   * Una fusión que escribe la base pero no llega a borrar los segmentos: al reabrir no se deben
+   * aplicar de nuevo sobre la base.
+   */
+  private static void checkInterruptedMerge(Path dir) throws Exception {
+    WarehouseDeltaStore store = WarehouseDeltaStore.open(dir.toString(), false);
+    Warehouse warehouse = store.getWarehouse();
+    int screw = warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    store.save();
+    Path delta = dir.resolve("delta-00000001.bin");
+    byte[] old = Files.readAllBytes(delta);
+
+    warehouse.incrementUnitsOfArticle(screw, 50);
+    store.merge();
+    Files.write(delta, old);
+    expect("reabrir tras fusión interrumpida", articles(warehouse),
+        articles(WarehouseDeltaStore.open(dir.toString(), false).getWarehouse()));
+  }
+
+  private static List<String> files(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(f -> f.getFileName().toString()).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static String articles(Warehouse warehouse) {
+    return warehouse.listArticlesAfter(-1, Integer.MAX_VALUE).toString();
+  }
+
+  private static void deleteAll(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static void expect(String check, String expected, String actual) {
+    if (!Objects.equals(expected, actual)) {
+      failures++;
+      System.err.println("FALLO en " + check + ": se esperaba " + expected + " y se ha recibido " + actual);
+    }
+  }
+}
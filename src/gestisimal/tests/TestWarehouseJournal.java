@@ -0,0 +1,167 @@
+package gestisimal.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import gestisimal.classes.Warehouse;
+import gestisimal.classes.WarehouseJournal;
+import gestisimal.exceptions.WarehousePersistenceException;
+
+/**
+ * Prueba de la recuperación del diario del almacén: comprueba que al reabrirlo se aplican los
+ * registros en orden sobre la instantánea, que se descarta el último registro si quedó a medias o
+ * su CRC no cuadra, y que un segmento dañado que no es el último impide abrir el diario. Termina
+ * con código 1 si alguna comprobación falla.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class TestWarehouseJournal {
+  /**
+   * Bytes del registro de unidades en el diario: cabecera de 8 y contenido de 9.
+   */
+  private static final int UNITS_RECORD = 17;
+
+  private static int failures;
+
+  public static void main(String[] args) throws Exception {
+    Path dir = Files.createTempDirectory("gestisimal-journal");
+    try {
+      checkReplayOrder(dir.resolve("orden"));
+      checkTornTail(dir.resolve("cortado"));
+      checkCorruptedCrc(dir.resolve("crc"));
+      checkCorruptedOlderSegment(dir.resolve("antiguo"));
+    } finally {
+      deleteAll(dir);
+    }
+
+    if (failures > 0) {
+      System.err.println(failures + " comprobaciones fallidas");
+      System.exit(1);
+    }
+    System.out.println("Diario del almacén: todas las comprobaciones correctas");
+  }
+
+  /**
+   * Altas, bajas, modificaciones y movimientos antes y después de compactar; el resultado solo
+   * coincide si los registros se aplican en el orden en que se escribieron.
+   */
+  private static void checkReplayOrder(Path dir) throws Exception {
+    String expected;
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      Warehouse warehouse = journal.getWarehouse();
+      int screw = warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+      int nut = warehouse.addArticle("Tuerca", "Acme", 0.05, 0.15, 50, 5, 500);
+      warehouse.incrementUnitsOfArticle(screw, 20);
+      journal.checkpoint();
+      warehouse.decreaseUnitsOfArticle(screw, 70);
+      warehouse.deleteArticle(nut);
+      // Mismo nombre y marca que el borrado: solo se puede aplicar después de la baja
+      int again = warehouse.addArticle("Tuerca", "Acme", 0.06, 0.16, 5, 1, 50);
+      warehouse.modifyArticle(screw, "Tornillo", "Acme", 0.12, 0.3, 7, 2, 900);
+      warehouse.incrementUnitsOfArticle(again, 3);
+      expected = articles(warehouse);
+    }
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      expect("orden de aplicación", expected, articles(journal.getWarehouse()));
+    }
+  }
+
+  private static void checkTornTail(Path dir) throws Exception {
+    String beforeLast = writeWithLastMovement(dir);
+    Path last = lastSegment(dir);
+    long size = Files.size(last);
+    try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+      channel.truncate(size - UNITS_RECORD / 2);
+    }
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      expect("registro a medias", beforeLast, articles(journal.getWarehouse()));
+    }
+    expect("segmento recortado", Long.toString(size - UNITS_RECORD), Long.toString(Files.size(last)));
+    // Tras recortarlo el segmento ya no es el último y se tiene que poder aplicar entero
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      expect("reabrir tras recortar", beforeLast, articles(journal.getWarehouse()));
+    }
+  }
+
+  private static void checkCorruptedCrc(Path dir) throws Exception {
+    String beforeLast = writeWithLastMovement(dir);
+    flipLastByte(lastSegment(dir));
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      expect("CRC erróneo en el último registro", beforeLast, articles(journal.getWarehouse()));
+    }
+  }
+
+  private static void checkCorruptedOlderSegment(Path dir) throws Exception {
+    writeWithLastMovement(dir);
+    Path older = lastSegment(dir);
+    writeWithLastMovement(dir);
+    flipLastByte(older);
+    try {
+      WarehouseJournal.open(dir.toString(), true).close();
+      expect("segmento antiguo dañado", "WarehousePersistenceException", "diario abierto");
+    } catch (WarehousePersistenceException e) {
+      // Es lo esperado
+    }
+  }
+
+  /**
+   * Abre el diario, da de alta un artículo y termina con una entrada de mercancía.
+   *
+   * @return    Artículos antes de la entrada.
+   */
+  private static String writeWithLastMovement(Path dir) throws Exception {
+    try (WarehouseJournal journal = WarehouseJournal.open(dir.toString(), true)) {
+      Warehouse warehouse = journal.getWarehouse();
+      int code = warehouse.addArticle("Arandela " + System.nanoTime(), "Acme", 0.01, 0.02, 10, 0, 100);
+      String beforeLast = articles(warehouse);
+      warehouse.incrementUnitsOfArticle(code, 5);
+      return beforeLast;
+    }
+  }
+
+  private static Path lastSegment(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      List<Path> segments = files.filter(f -> f.getFileName().toString().startsWith("journal-"))
+          .filter(f -> f.toFile().length() > 0).sorted().collect(Collectors.toList());
+      return segments.get(segments.size() - 1);
+    }
+  }
+
+  private static void flipLastByte(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer last = ByteBuffer.allocate(1);
+      channel.read(last, channel.size() - 1);
+      last.put(0, (byte) (last.get(0) ^ 0xFF));
+      last.rewind();
+      channel.write(last, channel.size() - 1);
+    }
+  }
+
+  private static String articles(Warehouse warehouse) {
+    return warehouse.listArticlesAfter(-1, Integer.MAX_VALUE).toString();
+  }
+
+  private static void deleteAll(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static void expect(String check, String expected, String actual) {
+    if (!Objects.equals(expected, actual)) {
+      failures++;
+      System.err.println("FALLO en " + check + ": se esperaba " + expected + " y se ha recibido " + actual);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package gestisimal.tests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import gestisimal.classes.Warehouse;
+import gestisimal.classes.WarehouseServer;
+import gestisimal.exceptions.WarehouseArticleRepeatedException;
+
+/**
+ * Prueba rápida del servidor del almacén: lo arranca en un puerto libre de localhost, envía
+ * varias peticiones seguidas sin esperar las respuestas y comprueba cada respuesta. Termina con
+ * código 1 si alguna comprobación falla.
+ *
+ * @author Quique Ruz Del Río
+ *
+ */
+
+public class TestWarehouseServer {
+  private static int failures;
+
+  public static void main(String[] args) throws Exception {
+    checkRejectsNonConcurrentWarehouse();
+    checkRepeatedAddIsQuiet();
+
+    Warehouse warehouse = new Warehouse(true);
+    int code = warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    // Más larga que el búfer inicial de la línea, para que tenga que crecer
+    String longName = "Arandela".repeat(40);
+    InetAddress localhost = InetAddress.getLoopbackAddress();
+    try (WarehouseServer server = WarehouseServer.start(warehouse, new InetSocketAddress(localhost, 0));
+        Socket socket = new Socket(localhost, server.getPort())) {
+      socket.setSoTimeout(5000);
+      Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+      // Todas las peticiones van en una sola escritura
+      out.write("GET " + code + "\n"
+          + "ADD Tuerca|Acme|0.05|0.15|50|5|500\n"
+          + "INC " + code + "|5\n"
+          + "DEC " + code + "|200\n"
+          + "DEC " + code + "|5\n"
+          + "GET " + code + "\n"
+          + "ADD Tornillo|Acme|0.1|0.25|1|1|1\n"
+          + "GET 999999\n"
+          + "FOO\n"
+          + "ADD " + longName + "|Acme|0.01|0.05|10|1|100\n"
+          + "quit ya\n"
+          + "GET " + code + "\n");
+      out.flush();
+
+      expect("GET", "OK " + code + "|Tornillo|Acme|0.1|0.25|100|10|1000", in.readLine());
+      String added = in.readLine();
+      if (added != null && added.startsWith("OK ")) {
+        String article = warehouse.returnArticle(Integer.parseInt(added.substring(3))).toString();
+        expect("ADD", "Tuerca", article.contains("name=Tuerca,") ? "Tuerca" : article);
+      } else {
+        expect("ADD", "OK <codigo>", added);
+      }
+      expect("INC", "OK", in.readLine());
+      expect("DEC sin unidades", "ERR INSUFFICIENT_STOCK", in.readLine());
+      expect("DEC", "OK", in.readLine());
+      expect("GET tras INC y DEC", "OK " + code + "|Tornillo|Acme|0.1|0.25|100|10|1000", in.readLine());
+      expect("ADD repetido", "ERR ARTICLE_REPEATED", in.readLine());
+      expect("GET inexistente", "ERR ARTICLE_NOT_FOUND", in.readLine());
+      expect("orden desconocida", "ERR UNKNOWN_COMMAND FOO", in.readLine());
+      String longAdded = in.readLine();
+      if (longAdded != null && longAdded.startsWith("OK ")) {
+        String article = warehouse.returnArticle(Integer.parseInt(longAdded.substring(3))).toString();
+        expect("ADD con línea larga", longName, article.contains("name=" + longName + ",") ? longName : article);
+      } else {
+        expect("ADD con línea larga", "OK <codigo>", longAdded);
+      }
+      expect("quit en minúsculas y con datos", "OK", in.readLine());
+      expect("cierre tras QUIT", null, in.readLine());
+    }
+
+    if (failures > 0) {
+      System.err.println(failures + " comprobaciones fallidas");
+      System.exit(1);
+    }
+    System.out.println("Servidor del almacén: todas las comprobaciones correctas");
+  }
+
+  private static void checkRejectsNonConcurrentWarehouse() throws Exception {
+    try {
+      WarehouseServer.start(new Warehouse(), 0).close();
+      expect("almacén no concurrente", "IllegalArgumentException", "servidor arrancado");
+    } catch (IllegalArgumentException e) {
+      // Es lo esperado
+    }
+  }
+
+  private static void checkRepeatedAddIsQuiet() throws Exception {
+    Warehouse warehouse = new Warehouse(true);
+    warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    PrintStream err = System.err;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    try {
+      warehouse.addArticle("Tornillo", "Acme", 0.1, 0.25, 100, 10, 1000);
+    } catch (WarehouseArticleRepeatedException e) {
+      // Es lo esperado
+    } finally {
+      System.setErr(err);
+    }
+    expect("ADD repetido sin salida de error", "", captured.toString(StandardCharsets.UTF_8));
+  }
+
+  private static void expect(String check, String expected, String actual) {
+    if (!Objects.equals(expected, actual)) {
+      failures++;
+      System.err.println("FALLO en " + check + ": se esperaba " + expected + " y se ha recibido " + actual);
+    }
+  }
+}
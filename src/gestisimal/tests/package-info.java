@@ -1,8 +1,8 @@
-/**
- * Suministra el programa de prueba de la clase Warehouse
- * 
- * @author Quique Ruz Del Río
- * 
- */
-
-package gestisimal.tests;
+/**
+ * Suministra el programa de prueba de la clase Warehouse
+ * 
+ * @author Quique Ruz Del Río
+ * 
+ */
+
+package gestisimal.tests;
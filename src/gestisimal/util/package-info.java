@@ -1,8 +1,8 @@
-/**
- * Clases secundarias que se utilizan en el test.
- * 
- * @author Quique Ruz Del Río
- * 
- */
-
-package gestisimal.util;
+/**
+ * Clases secundarias que se utilizan en el test.
+ * 
+ * @author Quique Ruz Del Río
+ * 
+ */
+
+package gestisimal.util;